@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits files for processing against a heap budget.
+ * Each file's memory cost is estimated from its size, format and reader engine; a file is
+ * admitted only while the estimated cost of all in-flight files fits the budget, the number
+ * of in-flight files is below the window, and live heap usage (MemoryMXBean) is not under pressure.
+ * A single file is always admitted when nothing else is running, so oversized files still get processed.
+ * When the run fails, {@link #abort} wakes the waiting caller and nothing more is admitted.
+ */
+final class AdmissionController {
+
+    private static final long MB = 1024L * 1024L;
+    // Fixed per-file overhead: parser state, buffers, result objects
+    private static final long BASE_COST = 2 * MB;
+    // Share of the max heap used as budget when none is configured
+    private static final double DEFAULT_BUDGET_RATIO = 0.6;
+    // Stop admitting new files while used heap is above this share of the max heap
+    private static final double HEAP_PRESSURE_RATIO = 0.85;
+    // Heap usage changes without any release(), so waiters re-check it periodically
+    private static final long PRESSURE_POLL_MILLIS = 50;
+
+    private final long budget;
+    private int maxInFlight;
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final long maxHeap = Runtime.getRuntime().maxMemory();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long inFlightCost;
+    private int inFlight;
+    private boolean aborted;
+
+    /**
+     * @param budgetMb    heap budget in MB, or 0 to use a share of the max heap
+     * @param maxInFlight maximum number of files admitted at the same time
+     */
+    AdmissionController(long budgetMb, int maxInFlight) {
+        this.budget = budgetMb > 0 ? budgetMb * MB : (long) (maxHeap * DEFAULT_BUDGET_RATIO);
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Estimates the heap needed to extract one column from the file.
+     * The multipliers are rough heap-to-file-size ratios per format and engine.
+     */
+    static long estimateCost(Path file, ExcelToCsvExtractor.ReaderEngine engine) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            return BASE_COST;
+        }
+
+        var name = file.getFileName().toString().toLowerCase();
+        boolean streaming = engine != ExcelToCsvExtractor.ReaderEngine.USERMODEL;
+        double ratio;
+        if (name.endsWith(".xlsx")) {
+            // Usermodel inflates the zip and builds XMLBeans for every cell; streaming keeps the shared strings
+            ratio = streaming ? 4.0 : 50.0;
+        } else if (name.endsWith(".xls")) {
+            ratio = streaming ? 2.0 : 8.0;
+        } else {
+            // SpreadsheetML is parsed with StAX; only the column values are kept
+            ratio = 0.5;
+        }
+        return BASE_COST + (long) (size * ratio);
+    }
+
+    /**
+     * Blocks until the files can be admitted together and reserves their costs.
+     * A batch counts as one file per cost; each file is released on its own.
+     * Returns false, reserving nothing, once the run has been aborted.
+     */
+    boolean acquire(long... costs) throws InterruptedException {
+        long reserved = 0;
+        for (long cost : costs) {
+            reserved += Math.min(cost, budget);
+        }
+        lock.lock();
+        try {
+            while (!aborted && !canAdmit(reserved)) {
+                released.await(PRESSURE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (aborted) {
+                return false;
+            }
+            inFlight += costs.length;
+            inFlightCost += reserved;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the in-flight window; used by the adaptive concurrency controller.
+     * Files already admitted keep running when the window shrinks.
+     */
+    void setMaxInFlight(int maxInFlight) {
+        lock.lock();
+        try {
+            this.maxInFlight = Math.max(1, maxInFlight);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops admitting files and wakes a caller waiting in acquire.
+     */
+    void abort() {
+        lock.lock();
+        try {
+            aborted = true;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a cost previously reserved with acquire.
+     */
+    void release(long cost) {
+        long reserved = Math.min(cost, budget);
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightCost -= reserved;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canAdmit(long cost) {
+        if (inFlight == 0) {
+            return true;
+        }
+        return inFlight < maxInFlight
+            && inFlightCost + cost <= budget
+            && !underHeapPressure();
+    }
+
+    private boolean underHeapPressure() {
+        long used = memoryBean.getHeapMemoryUsage().getUsed();
+        return used > maxHeap * HEAP_PRESSURE_RATIO;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.stream.Stream;
+
+/**
+ * Matches header cells against the requested column (case-insensitive, surrounding whitespace ignored).
+ * The accepted spellings are computed once per column name, so readers only compare strings per header cell.
+ * Shared by the workbook, streaming and XML readers.
+ */
+final class ColumnMatcher {
+
+    private final String columnName;
+    private final String[] variants;
+
+    ColumnMatcher(String columnName) {
+        this.columnName = columnName;
+        // Upper-case and capitalized forms can differ in length (e.g. 'ß'), so they are not covered by equalsIgnoreCase
+        this.variants = Stream.of(columnName.toLowerCase(), columnName.toUpperCase(), capitalize(columnName))
+            .distinct()
+            .toArray(String[]::new);
+    }
+
+    /**
+     * The column name as requested, for error messages.
+     */
+    String columnName() {
+        return columnName;
+    }
+
+    boolean matches(String header) {
+        var trimmed = header.trim();
+        for (var variant : variants) {
+            if (trimmed.equalsIgnoreCase(variant)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String capitalize(String str) {
+        if (str == null || str.isEmpty()) return str;
+        return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
+    }
+}
@@ -0,0 +1,204 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Auto-tunes the number of files in flight from measured throughput (AIMD).
+ * The parse threads count the values they extract as they go (see {@link #counting}), so running files
+ * are measured too, not only completed ones, and report the input bytes of every file they complete
+ * (see {@link #fileCompleted}). Every 500 ms a scheduled tick compares the rows/s and input bytes/s
+ * since the previous tick with the window before:
+ * <ul>
+ *   <li>throughput improved: add one file of concurrency</li>
+ *   <li>throughput dropped or GC time rose: cut concurrency by a quarter</li>
+ *   <li>throughput plateaued right after an increase: undo that increase, otherwise hold
+ *       (and probe upwards again after a few quiet windows)</li>
+ * </ul>
+ * Ticks without any progress (all files still opening their workbooks) are skipped. A window in which no file
+ * completed has no bytes/s and is judged by rows/s alone.
+ * The level is applied to the {@link AdmissionController} window; every change is kept with its reason.
+ */
+final class ConcurrencyController implements AutoCloseable {
+
+    private static final long WINDOW_MILLIS = 500;
+    // Relative throughput change treated as noise
+    private static final double TOLERANCE = 0.05;
+    // GC share of wall time above which a rise triggers a back-off
+    private static final double GC_CEILING = 0.10;
+    private static final int PROBE_AFTER_HOLDS = 4;
+    private static final int INITIAL_LEVEL = 2;
+
+    private final AdmissionController admission;
+    private final int maxLevel;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final long startNanos = System.nanoTime();
+    private final List<String> changes = new ArrayList<>();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("concurrency-tuner").daemon().factory());
+
+    private int level;
+    private boolean lastWasIncrease;
+    private int holds;
+
+    private long windowStart = System.nanoTime();
+    private long windowGcMillis = totalGcMillis();
+    // Counter totals at the start of the window
+    private long windowRows;
+    private long windowFiles;
+    private long windowBytes;
+
+    private double lastRowsPerSecond = -1;
+    private double lastBytesPerSecond = -1;
+    private double lastGcRatio;
+
+    ConcurrencyController(AdmissionController admission, int maxLevel) {
+        this.admission = admission;
+        this.maxLevel = Math.max(1, maxLevel);
+        this.level = Math.min(INITIAL_LEVEL, this.maxLevel);
+        admission.setMaxInFlight(level);
+        ticker.scheduleAtFixedRate(this::tick, WINDOW_MILLIS, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wraps a parse sink so that its values count towards the throughput.
+     */
+    RowSink counting(RowSink sink) {
+        return value -> {
+            rows.increment();
+            sink.accept(value);
+        };
+    }
+
+    /**
+     * Counts the (compressed) size of a file the parse stage is done with towards the throughput.
+     */
+    void fileCompleted(long inputBytes) {
+        files.increment();
+        bytes.add(inputBytes);
+    }
+
+    /**
+     * Ends the window and re-evaluates the level.
+     */
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        long totalRows = rows.sum();
+        long totalFiles = files.sum();
+        long totalBytes = bytes.sum();
+        if (totalRows == windowRows) {
+            return;
+        }
+
+        double seconds = (now - windowStart) / 1e9;
+        double rowsPerSecond = (totalRows - windowRows) / seconds;
+        // Undefined (-1) without a completed file
+        double bytesPerSecond = totalFiles > windowFiles ? (totalBytes - windowBytes) / seconds : -1;
+        long gcMillis = totalGcMillis();
+        double gcRatio = (gcMillis - windowGcMillis) / (seconds * 1e3);
+
+        adjust(rowsPerSecond, bytesPerSecond, gcRatio, now);
+
+        lastRowsPerSecond = rowsPerSecond;
+        if (bytesPerSecond >= 0) {
+            lastBytesPerSecond = bytesPerSecond;
+        }
+        lastGcRatio = gcRatio;
+        windowStart = now;
+        windowGcMillis = gcMillis;
+        windowRows = totalRows;
+        windowFiles = totalFiles;
+        windowBytes = totalBytes;
+    }
+
+    /**
+     * Stops the tick; the level stays as it is.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private void adjust(double rowsPerSecond, double bytesPerSecond, double gcRatio, long now) {
+        if (lastRowsPerSecond < 0) {
+            var input = bytesPerSecond >= 0 ? formatBytes(bytesPerSecond) + "/s" : "no file completed";
+            setLevel(level + 1, now, "first window: %.0f rows/s, %s".formatted(rowsPerSecond, input));
+            return;
+        }
+
+        double rowsChange = relativeChange(rowsPerSecond, lastRowsPerSecond);
+        var throughput = "rows/s %+.0f%%".formatted(rowsChange * 100);
+        double bytesChange = rowsChange;
+        if (bytesPerSecond >= 0 && lastBytesPerSecond >= 0) {
+            bytesChange = relativeChange(bytesPerSecond, lastBytesPerSecond);
+            throughput += ", bytes/s %+.0f%%".formatted(bytesChange * 100);
+        }
+
+        if (gcRatio > GC_CEILING && gcRatio > lastGcRatio + TOLERANCE) {
+            decrease(now, "GC time %.0f%% (was %.0f%%)".formatted(gcRatio * 100, lastGcRatio * 100));
+        } else if (rowsChange > TOLERANCE || bytesChange > TOLERANCE) {
+            setLevel(level + 1, now, throughput);
+        } else if (rowsChange < -TOLERANCE && bytesChange < -TOLERANCE) {
+            decrease(now, throughput);
+        } else if (lastWasIncrease) {
+            setLevel(level - 1, now, "plateau after increase: " + throughput);
+        } else if (++holds >= PROBE_AFTER_HOLDS) {
+            setLevel(level + 1, now, "probe after plateau: " + throughput);
+        }
+    }
+
+    private void decrease(long now, String reason) {
+        setLevel(Math.min(level - 1, (int) (level * 0.75)), now, reason);
+    }
+
+    private void setLevel(int newLevel, long now, String reason) {
+        newLevel = Math.clamp(newLevel, 1, maxLevel);
+        lastWasIncrease = newLevel > level;
+        holds = 0;
+        if (newLevel == level) {
+            return;
+        }
+        changes.add("%6.1fs  %d -> %d  (%s)".formatted((now - startNanos) / 1e9, level, newLevel, reason));
+        level = newLevel;
+        admission.setMaxInFlight(newLevel);
+    }
+
+    /**
+     * Final level and the reasons for each change, for the run summary.
+     */
+    synchronized String report() {
+        var report = new StringBuilder("Concurrency: auto-tuned, final level %d of %d%n".formatted(level, maxLevel));
+        for (var change : changes) {
+            report.append("  ").append(change).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private long totalGcMillis() {
+        long total = 0;
+        for (var collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static double relativeChange(double current, double previous) {
+        if (previous <= 0) {
+            return current > 0 ? 1.0 : 0.0;
+        }
+        return (current - previous) / previous;
+    }
+
+    private static String formatBytes(double bytes) {
+        return bytes >= 1024 * 1024
+            ? "%.1f MB".formatted(bytes / (1024 * 1024))
+            : "%.0f KB".formatted(bytes / 1024);
+    }
+}
@@ -0,0 +1,138 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.CharBuffer;
+
+/**
+ * Single-pass CSV field escaper.
+ * The value is copied once into a reusable char buffer and scanned for all characters that
+ * require quoting (separator, quote, CR, LF) at the same time. Quotes are then doubled in place,
+ * so the escaped field is handed to the encoder without building intermediate strings.
+ * The scan uses the Vector API when the jdk.incubator.vector module is enabled
+ * (--add-modules jdk.incubator.vector) and the build included {@link CsvVectorScanner} (mvn -Pvector),
+ * and a scalar loop otherwise. The scanner is looked up by name, so the default build compiles without the module.
+ */
+final class CsvEscaper {
+
+    // CsvVectorScanner.indexOfSpecial, or null; a constant, so the JIT inlines the call
+    private static final MethodHandle VECTOR_SCAN = vectorScan();
+    static final boolean VECTORIZED = VECTOR_SCAN != null;
+    // Below this length the vector setup costs more than it saves
+    private static final int VECTOR_MIN_LENGTH = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final char separator;
+    private char[] buffer = new char[INITIAL_CAPACITY];
+    private CharBuffer view = CharBuffer.wrap(buffer);
+
+    CsvEscaper(ExcelToCsvExtractor.CsvDelimiter delimiter) {
+        this.separator = delimiter.getSeparator().charAt(0);
+    }
+
+    /**
+     * Escapes the value and returns a view of the escaped field.
+     * The view is only valid until the next call.
+     */
+    CharBuffer escape(String value) {
+        int length = value.length();
+        // Worst case: every character is a quote, plus the surrounding quotes
+        ensureCapacity(2 * length + 2);
+        // Leave room for the opening quote
+        value.getChars(0, length, buffer, 1);
+        int end = 1 + length;
+
+        int special = indexOfSpecial(buffer, 1, end, separator);
+        if (special < 0) {
+            return field(1, end);
+        }
+
+        int quotes = 0;
+        for (int i = special; i < end; i++) {
+            if (buffer[i] == '"') {
+                quotes++;
+            }
+        }
+
+        // Double the quotes in place, moving the tail right from the back
+        int shift = quotes;
+        for (int i = end - 1; shift > 0; i--) {
+            char c = buffer[i];
+            buffer[i + shift] = c;
+            if (c == '"') {
+                shift--;
+                buffer[i + shift] = '"';
+            }
+        }
+        end += quotes;
+
+        buffer[0] = '"';
+        buffer[end] = '"';
+        return field(0, end + 1);
+    }
+
+    /**
+     * Checks whether a value needs quoting, in one pass over the string.
+     */
+    static boolean needsQuoting(String value, char separator) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == separator || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index of the first character in [from, to) that requires quoting, or -1.
+     */
+    static int indexOfSpecial(char[] chars, int from, int to, char separator) {
+        if (VECTORIZED && to - from >= VECTOR_MIN_LENGTH) {
+            try {
+                return (int) VECTOR_SCAN.invokeExact(chars, from, to, separator);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return indexOfSpecialScalar(chars, from, to, separator);
+    }
+
+    private static MethodHandle vectorScan() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName("CsvVectorScanner"), "indexOfSpecial",
+                MethodType.methodType(int.class, char[].class, int.class, int.class, char.class));
+        } catch (ReflectiveOperationException e) {
+            // Built without -Pvector
+            return null;
+        }
+    }
+
+    static int indexOfSpecialScalar(char[] chars, int from, int to, char separator) {
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == separator || c == '"' || c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = new char[Math.max(capacity, buffer.length * 2)];
+            view = CharBuffer.wrap(buffer);
+        }
+    }
+
+    private CharBuffer field(int start, int end) {
+        view.clear();
+        view.position(start);
+        view.limit(end);
+        return view;
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Row sink that writes CSV rows as they arrive.
+ * Values are escaped by a {@link CsvEscaper} into a reusable char buffer and encoded with a
+ * CharsetEncoder into one reusable ByteBuffer, all taken from the thread's {@link ExtractionContext}.
+ * The buffer is written to a channel whenever it fills up, so memory use and
+ * time-to-first-byte do not depend on the number of rows.
+ * Empty values are skipped and values are pseudonymized when scrambling is requested.
+ * The size and CRC-32C of the written bytes are tracked for the extraction results.
+ * Every escaped field is checked for balanced quotes and structure before it is written,
+ * which gives the guarantee of the read-back validator without reading the file again.
+ */
+final class CsvRowWriter implements RowSink, AutoCloseable {
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final CsvEscaper escaper;
+    private final char separator;
+    private final CharBuffer rowEnd;
+    // Null unless scrambling is requested
+    private final Pseudonymizer pseudonymizer;
+    private long rowsWritten;
+    private long bytesWritten;
+    private final CRC32C checksum = new CRC32C();
+
+    private CsvRowWriter(WritableByteChannel channel, ExtractionContext context, boolean writeBom) throws IOException {
+        this.channel = channel;
+        this.encoder = context.encoder.reset();
+        // Cleared in case a previous writer of this context was abandoned after a failure
+        this.buffer = context.buffer.clear();
+        this.escaper = context.escaper;
+        this.separator = context.options().delimiter().getSeparator().charAt(0);
+        this.rowEnd = context.rowEnd;
+        this.pseudonymizer = context.pseudonymizer();
+        var encoding = context.options().encoding();
+        if (writeBom && encoding.hasBom()) {
+            buffer.put(encoding.getBom());
+        }
+    }
+
+    /**
+     * Creates (or truncates) the CSV file and writes the BOM if the encoding requires one.
+     * The writer borrows the context's buffer and encoder until it is closed.
+     */
+    static CsvRowWriter open(Path path, ExtractionContext context) throws IOException {
+        // Loads the scramble key before the file is created, so a key error leaves no empty CSV behind
+        context.pseudonymizer();
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new CsvRowWriter(channel, context, true);
+    }
+
+    /**
+     * Writes rows without a BOM to the given channel, for fragments that are later appended to a merged CSV.
+     */
+    static CsvRowWriter fragment(WritableByteChannel channel, ExtractionContext context) throws IOException {
+        return new CsvRowWriter(channel, context, false);
+    }
+
+    /**
+     * Whether a value produces a row; empty and blank values are skipped.
+     */
+    static boolean isWritten(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    @Override
+    public void accept(String value) {
+        if (!isWritten(value)) {
+            return;
+        }
+
+        var outputValue = pseudonymizer != null ? pseudonymizer.pseudonymize(value) : value;
+        try {
+            var field = escaper.escape(outputValue);
+            if (!isWellFormedField(field)) {
+                throw new IOException("Invalid CSV at row " + (rowsWritten + 1) + ": unbalanced quotes");
+            }
+            encode(field);
+            encode(rowEnd.rewind());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rowsWritten++;
+    }
+
+    /**
+     * Checks an escaped field: either plain (no quote, separator or line break),
+     * or wrapped in quotes with every inner quote doubled.
+     */
+    private boolean isWellFormedField(CharSequence field) {
+        int length = field.length();
+        if (length > 0 && field.charAt(0) == '"') {
+            if (length < 2 || field.charAt(length - 1) != '"') {
+                return false;
+            }
+            for (int i = 1; i < length - 1; i++) {
+                if (field.charAt(i) == '"') {
+                    if (i + 1 >= length - 1 || field.charAt(i + 1) != '"') {
+                        return false;
+                    }
+                    i++; // Skip the escaped quote
+                }
+            }
+            return true;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            if (c == '"' || c == '\n' || c == '\r' || c == separator) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of non-empty rows written so far.
+     */
+    long rowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Bytes written to the channel (including the BOM); complete after close.
+     */
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * CRC-32C of the bytes written to the channel; complete after close.
+     */
+    long checksum() {
+        return checksum.getValue();
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, false);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        checksum.update(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        bytesWritten += buffer.limit();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            var empty = CharBuffer.allocate(0);
+            while (encoder.encode(empty, buffer, true).isOverflow()) {
+                drain();
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazy list of the values of a written per-file CSV.
+ * Nothing is held until the list is first accessed; the CSV is then read back and kept only
+ * through a soft reference, so results of large folders stay O(files) on the heap.
+ * The values are the ones written to the CSV: blank values are not included and
+ * scrambled output yields the pseudonyms.
+ */
+final class CsvValues extends AbstractList<String> {
+
+    private final Path csvFile;
+    private final ExcelToCsvExtractor.CsvEncoding encoding;
+    private final ExcelToCsvExtractor.CsvDelimiter delimiter;
+    private SoftReference<List<String>> loaded = new SoftReference<>(null);
+
+    CsvValues(Path csvFile, ExcelToCsvExtractor.CsvEncoding encoding, ExcelToCsvExtractor.CsvDelimiter delimiter) {
+        this.csvFile = csvFile;
+        this.encoding = encoding;
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public String get(int index) {
+        return values().get(index);
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    private synchronized List<String> values() {
+        var values = loaded.get();
+        if (values == null) {
+            try {
+                values = read(csvFile, encoding, delimiter);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + csvFile.getFileName(), e);
+            }
+            loaded = new SoftReference<>(values);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the first field of every row, undoing the quoting applied by {@link CsvEscaper}.
+     * Quoted fields may span lines.
+     */
+    static List<String> read(Path csvFile, ExcelToCsvExtractor.CsvEncoding encoding, ExcelToCsvExtractor.CsvDelimiter delimiter) throws IOException {
+        char separator = delimiter.getSeparator().charAt(0);
+        var values = new ArrayList<String>();
+        var field = new StringBuilder();
+
+        try (var reader = Files.newBufferedReader(csvFile, encoding.getCharset())) {
+            int c = reader.read();
+            if (c == '\uFEFF') {
+                c = reader.read();
+            }
+            while (c != -1) {
+                field.setLength(0);
+                if (c == '"') {
+                    c = readQuoted(reader, field);
+                } else {
+                    while (c != -1 && c != separator && c != '\n' && c != '\r') {
+                        field.append((char) c);
+                        c = reader.read();
+                    }
+                }
+                values.add(field.toString());
+
+                // Skip the rest of the row: separator and line break
+                while (c != -1 && c != '\n') {
+                    c = reader.read();
+                }
+                c = reader.read();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads a quoted field (the opening quote is consumed) and returns the character after it.
+     */
+    private static int readQuoted(Reader reader, StringBuilder field) throws IOException {
+        while (true) {
+            int c = reader.read();
+            if (c == -1) {
+                throw new IOException("Unterminated quoted field");
+            }
+            if (c == '"') {
+                int next = reader.read();
+                if (next != '"') {
+                    return next;
+                }
+            }
+            field.append((char) c);
+        }
+    }
+}
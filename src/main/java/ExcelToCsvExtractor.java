@@ -1,11 +1,10 @@
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 import java.io.*;
 import java.nio.charset.Charset;
@@ -15,6 +14,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.stream.*;
 
 /**
@@ -25,8 +25,8 @@ import java.util.stream.*;
  */
 public class ExcelToCsvExtractor {
 
-    private static final String CSV_FOLDER = "CSV";
-    private static final String LOGS_FOLDER = "logs";
+    static final String CSV_FOLDER = "CSV";
+    static final String LOGS_FOLDER = "logs";
 
     /**
      * CSV delimiter options with display names and actual separator characters.
@@ -94,15 +94,288 @@ public class ExcelToCsvExtractor {
         }
     }
 
+    /**
+     * Reader engines for .xlsx and .xls workbooks.
+     * STREAMING reads the first sheet through POI's event APIs (SAX for .xlsx, record stream for .xls),
+     * SCANNER is STREAMING with .xlsx sheets read by a hand-written byte-level scanner instead of SAX,
+     * USERMODEL loads the full workbook into memory.
+     */
+    public enum ReaderEngine {
+        STREAMING("Streaming"),
+        SCANNER("Streaming, byte scanner for .xlsx"),
+        USERMODEL("Full workbook (usermodel)");
+
+        private final String displayName;
+
+        ReaderEngine(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * How the streaming .xlsx reader holds the workbook's shared strings table.
+     * SELECTIVE scans the sheet first and keeps only the strings of the target column,
+     * trading a second pass over the sheet for memory proportional to the column's distinct values.
+     * MAPPED keeps the whole table off the heap in a memory-mapped temp file, for tables with millions of entries.
+     */
+    public enum SharedStringsMode {
+        IN_MEMORY("Whole table in memory"),
+        SELECTIVE("Target column only (two-pass)"),
+        MAPPED("Off-heap, memory-mapped");
+
+        private final String displayName;
+
+        SharedStringsMode(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Order in which files are handed to the parser threads.
+     * HISTORY orders by parse durations recorded in previous runs, longest first.
+     */
+    public enum SchedulePolicy {
+        FILE_ORDER("Folder listing order"),
+        LARGEST_FIRST("Largest first"),
+        SMALLEST_FIRST("Smallest first"),
+        HISTORY("Longest previous duration first");
+
+        private final String displayName;
+
+        SchedulePolicy(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Order of the files' rows in the merged CSV.
+     * COMPLETION appends each file as soon as it finishes; SOURCE_FILE keeps a stable order by file name.
+     */
+    public enum MergeOrder {
+        COMPLETION("Completion order"),
+        SOURCE_FILE("Sorted by source file");
+
+        private final String displayName;
+
+        MergeOrder(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
     public sealed interface ExtractionResult permits ExtractionSuccess, ExtractionFailure {}
 
-    public record ExtractionSuccess(Path sourceFile, Path csvFile, int rowCount, List<String> values) implements ExtractionResult {}
+    /**
+     * values holds the extracted values when they are retained (retainValues). Otherwise it is a lazy
+     * handle that re-reads the per-file CSV on first access; when merging without per-file CSVs it is empty.
+     */
+    public record ExtractionSuccess(Path sourceFile, Path csvFile, int rowCount, List<String> values, FileStats stats) implements ExtractionResult {}
+
+    /**
+     * Per-file output statistics. csvBytes and checksum (CRC-32C) cover the bytes written for the file:
+     * the per-file CSV, or the file's part of the merged CSV.
+     */
+    public record FileStats(long csvBytes, long checksum, long parseMillis) {}
+
+    /**
+     * Rows and output bytes of one extracted column, as returned by extractColumn.
+     */
+    record WrittenColumn(int rowCount, long csvBytes, long checksum) {}
 
     public record ExtractionFailure(Path sourceFile, String errorMessage) implements ExtractionResult {}
 
+    /**
+     * One value published by {@link #publishRows}: rowIndex counts the data rows of the source file from 0.
+     */
+    public record ExtractedRow(Path sourceFile, long rowIndex, String value) {}
+
     public record ColumnData(int index, String name) {}
 
-    public record AppConfig(String columnName, Path folderPath, boolean mergeOutput, CsvDelimiter delimiter, CsvEncoding encoding) {}
+    /**
+     * Extraction settings. memoryBudgetMb limits the estimated heap of concurrently
+     * processed files (0 = derive from the max heap), threads sizes the parse pool (0 = one per core).
+     * adaptiveConcurrency tunes the number of files in flight from measured throughput.
+     * paranoidVerify re-reads every written CSV in addition to the checks done while writing.
+     * mergeOrder orders the rows of the merged CSV, which is written while files complete.
+     * keepFileCsvs also writes the per-file CSVs when merging; the merged CSV is then concatenated from them.
+     * retainValues keeps every extracted value in the results; otherwise results hold only counts and
+     * statistics, so their heap use grows with the number of files rather than rows.
+     * sharedStrings selects how the streaming .xlsx reader loads the shared strings table.
+     * pipelinedInflate inflates large .xlsx sheets on a separate thread while they are parsed.
+     * parallelRows parses large single sheets (.xlsx and SpreadsheetML) in row ranges on the fork/join pool.
+     */
+    public record ExtractionOptions(boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding, ReaderEngine engine, long memoryBudgetMb, int threads, SchedulePolicy schedule, boolean adaptiveConcurrency, boolean paranoidVerify, MergeOrder mergeOrder, boolean keepFileCsvs, boolean retainValues, SharedStringsMode sharedStrings, boolean pipelinedInflate, boolean parallelRows) {
+
+        public static ExtractionOptions defaults() {
+            return builder().build();
+        }
+
+        /**
+         * Default settings with the given output options (as used by the GUI).
+         */
+        public static ExtractionOptions forOutput(boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
+            return builder()
+                .mergeOutput(mergeOutput)
+                .scrambleOutput(scrambleOutput)
+                .delimiter(delimiter)
+                .encoding(encoding)
+                .build();
+        }
+
+        /**
+         * Starts from the default settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /**
+         * Builder for ExtractionOptions, so callers only name the settings they change.
+         */
+        public static final class Builder {
+            private boolean mergeOutput;
+            private boolean scrambleOutput;
+            private CsvDelimiter delimiter = CsvDelimiter.SEMICOLON;
+            private CsvEncoding encoding = CsvEncoding.UTF_8;
+            private ReaderEngine engine = ReaderEngine.STREAMING;
+            private long memoryBudgetMb; // Derived from max heap
+            private int threads; // One per core
+            private SchedulePolicy schedule = SchedulePolicy.LARGEST_FIRST;
+            private boolean adaptiveConcurrency;
+            private boolean paranoidVerify;
+            private MergeOrder mergeOrder = MergeOrder.SOURCE_FILE;
+            private boolean keepFileCsvs;
+            private boolean retainValues;
+            private SharedStringsMode sharedStrings = SharedStringsMode.IN_MEMORY;
+            private boolean pipelinedInflate;
+            private boolean parallelRows;
+
+            private Builder() {
+            }
+
+            public Builder mergeOutput(boolean mergeOutput) {
+                this.mergeOutput = mergeOutput;
+                return this;
+            }
+
+            public Builder scrambleOutput(boolean scrambleOutput) {
+                this.scrambleOutput = scrambleOutput;
+                return this;
+            }
+
+            public Builder delimiter(CsvDelimiter delimiter) {
+                this.delimiter = Objects.requireNonNull(delimiter);
+                return this;
+            }
+
+            public Builder encoding(CsvEncoding encoding) {
+                this.encoding = Objects.requireNonNull(encoding);
+                return this;
+            }
+
+            public Builder engine(ReaderEngine engine) {
+                this.engine = Objects.requireNonNull(engine);
+                return this;
+            }
+
+            public Builder memoryBudgetMb(long memoryBudgetMb) {
+                this.memoryBudgetMb = memoryBudgetMb;
+                return this;
+            }
+
+            public Builder threads(int threads) {
+                this.threads = threads;
+                return this;
+            }
+
+            public Builder schedule(SchedulePolicy schedule) {
+                this.schedule = Objects.requireNonNull(schedule);
+                return this;
+            }
+
+            public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+                this.adaptiveConcurrency = adaptiveConcurrency;
+                return this;
+            }
+
+            public Builder paranoidVerify(boolean paranoidVerify) {
+                this.paranoidVerify = paranoidVerify;
+                return this;
+            }
+
+            public Builder mergeOrder(MergeOrder mergeOrder) {
+                this.mergeOrder = Objects.requireNonNull(mergeOrder);
+                return this;
+            }
+
+            public Builder keepFileCsvs(boolean keepFileCsvs) {
+                this.keepFileCsvs = keepFileCsvs;
+                return this;
+            }
+
+            public Builder retainValues(boolean retainValues) {
+                this.retainValues = retainValues;
+                return this;
+            }
+
+            public Builder sharedStrings(SharedStringsMode sharedStrings) {
+                this.sharedStrings = Objects.requireNonNull(sharedStrings);
+                return this;
+            }
+
+            public Builder pipelinedInflate(boolean pipelinedInflate) {
+                this.pipelinedInflate = pipelinedInflate;
+                return this;
+            }
+
+            public Builder parallelRows(boolean parallelRows) {
+                this.parallelRows = parallelRows;
+                return this;
+            }
+
+            public ExtractionOptions build() {
+                return new ExtractionOptions(mergeOutput, scrambleOutput, delimiter, encoding, engine, memoryBudgetMb, threads, schedule, adaptiveConcurrency, paranoidVerify, mergeOrder, keepFileCsvs, retainValues, sharedStrings, pipelinedInflate, parallelRows);
+            }
+        }
+
+        /**
+         * Whether a CSV is written for every input file.
+         */
+        public boolean writesFileCsvs() {
+            return !mergeOutput || keepFileCsvs;
+        }
+    }
+
+    public record AppConfig(String columnName, Path folderPath, ExtractionOptions options) {}
+
+    /**
+     * Signals that a file cannot be extracted (missing header row or column).
+     * The message is reported as the ExtractionFailure error message.
+     */
+    static final class ExtractionException extends IOException {
+        ExtractionException(String message) {
+            super(message);
+        }
+    }
 
     public static void main(String[] args) {
         // Launch GUI if no arguments provided
@@ -116,16 +389,18 @@ public class ExcelToCsvExtractor {
             System.exit(1);
         }
 
-        var results = processExcelFiles(config.folderPath(), config.columnName(), config.mergeOutput(), false, config.delimiter(), config.encoding());
-        handleResults(results, config.folderPath(), config.mergeOutput(), false, config.delimiter(), config.encoding());
+        var results = processExcelFiles(config.folderPath(), config.columnName(), config.options());
+        handleResults(results, config.folderPath());
+        Log.flush();
     }
 
     /**
      * Handles extraction results - prints summary and writes logs.
+     * The CSVs are already written while processing, so no output options are needed here.
      * Public method for GUI access.
      */
-    public static void handleResults(List<ExtractionResult> results, Path folder, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        printResults(results, folder, mergeOutput, scrambleOutput, delimiter, encoding);
+    public static void handleResults(List<ExtractionResult> results, Path folder) {
+        printResults(results, folder);
     }
 
     private static AppConfig parseArguments(String[] args) {
@@ -134,22 +409,58 @@ public class ExcelToCsvExtractor {
             return null;
         }
 
-        boolean mergeOutput = false;
-        CsvDelimiter delimiter = CsvDelimiter.SEMICOLON; // Default for backward compatibility
-        CsvEncoding encoding = CsvEncoding.UTF_8; // Default encoding
+        var options = ExtractionOptions.builder();
         String columnName = null;
         String folderPathStr = null;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("--merge") || args[i].equals("-m")) {
-                mergeOutput = true;
+                options.mergeOutput(true);
+            } else if (args[i].equals("--keep-files")) {
+                options.keepFileCsvs(true);
+            } else if (args[i].equals("--scramble")) {
+                options.scrambleOutput(true);
+            } else if (args[i].equals("--paranoid-verify")) {
+                options.paranoidVerify(true);
+            } else if (args[i].equals("--pipelined-inflate")) {
+                options.pipelinedInflate(true);
+            } else if (args[i].equals("--parallel-rows")) {
+                options.parallelRows(true);
+            } else if (args[i].equals("--quiet") || args[i].equals("-q")) {
+                Log.setLevel(Log.Level.WARN);
             } else if (args[i].equals("--delimiter") || args[i].equals("-d")) {
                 if (i + 1 < args.length) {
-                    delimiter = parseDelimiter(args[++i]);
+                    options.delimiter(parseDelimiter(args[++i]));
                 }
             } else if (args[i].equals("--encoding") || args[i].equals("-e")) {
                 if (i + 1 < args.length) {
-                    encoding = parseEncoding(args[++i]);
+                    options.encoding(parseEncoding(args[++i]));
+                }
+            } else if (args[i].equals("--engine")) {
+                if (i + 1 < args.length) {
+                    options.engine(parseEngine(args[++i]));
+                }
+            } else if (args[i].equals("--shared-strings")) {
+                if (i + 1 < args.length) {
+                    options.sharedStrings(parseSharedStrings(args[++i]));
+                }
+            } else if (args[i].equals("--memory-budget")) {
+                if (i + 1 < args.length) {
+                    options.memoryBudgetMb(parseMemoryBudget(args[++i]));
+                }
+            } else if (args[i].equals("--threads") || args[i].equals("-t")) {
+                if (i + 1 < args.length) {
+                    var value = args[++i];
+                    boolean adaptive = value.equalsIgnoreCase("auto");
+                    options.adaptiveConcurrency(adaptive).threads(adaptive ? 0 : parseThreads(value));
+                }
+            } else if (args[i].equals("--schedule")) {
+                if (i + 1 < args.length) {
+                    options.schedule(parseSchedule(args[++i]));
+                }
+            } else if (args[i].equals("--merge-order")) {
+                if (i + 1 < args.length) {
+                    options.mergeOrder(parseMergeOrder(args[++i]));
                 }
             } else if (columnName == null) {
                 columnName = args[i];
@@ -170,7 +481,7 @@ public class ExcelToCsvExtractor {
             return null;
         }
 
-        return new AppConfig(columnName, folderPath, mergeOutput, delimiter, encoding);
+        return new AppConfig(columnName, folderPath, options.build());
     }
 
     private static CsvDelimiter parseDelimiter(String value) {
@@ -201,6 +512,72 @@ public class ExcelToCsvExtractor {
         };
     }
 
+    private static ReaderEngine parseEngine(String value) {
+        return switch (value.toLowerCase()) {
+            case "streaming", "stream" -> ReaderEngine.STREAMING;
+            case "scanner", "scan" -> ReaderEngine.SCANNER;
+            case "usermodel", "workbook" -> ReaderEngine.USERMODEL;
+            default -> {
+                System.err.println("Unknown engine: " + value + ", using streaming");
+                yield ReaderEngine.STREAMING;
+            }
+        };
+    }
+
+    private static SharedStringsMode parseSharedStrings(String value) {
+        return switch (value.toLowerCase()) {
+            case "memory", "all" -> SharedStringsMode.IN_MEMORY;
+            case "selective", "column" -> SharedStringsMode.SELECTIVE;
+            case "mapped", "offheap" -> SharedStringsMode.MAPPED;
+            default -> {
+                System.err.println("Unknown shared strings mode: " + value + ", using memory");
+                yield SharedStringsMode.IN_MEMORY;
+            }
+        };
+    }
+
+    private static long parseMemoryBudget(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid memory budget: " + value + ", using default");
+            return 0;
+        }
+    }
+
+    private static int parseThreads(String value) {
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid thread count: " + value + ", using one per core");
+            return 0;
+        }
+    }
+
+    private static SchedulePolicy parseSchedule(String value) {
+        return switch (value.toLowerCase()) {
+            case "listing", "none" -> SchedulePolicy.FILE_ORDER;
+            case "largest", "lpt" -> SchedulePolicy.LARGEST_FIRST;
+            case "smallest" -> SchedulePolicy.SMALLEST_FIRST;
+            case "history" -> SchedulePolicy.HISTORY;
+            default -> {
+                System.err.println("Unknown schedule: " + value + ", using largest first");
+                yield SchedulePolicy.LARGEST_FIRST;
+            }
+        };
+    }
+
+    private static MergeOrder parseMergeOrder(String value) {
+        return switch (value.toLowerCase()) {
+            case "sorted", "source" -> MergeOrder.SOURCE_FILE;
+            case "completion" -> MergeOrder.COMPLETION;
+            default -> {
+                System.err.println("Unknown merge order: " + value + ", using sorted");
+                yield MergeOrder.SOURCE_FILE;
+            }
+        };
+    }
+
     private static void printUsage() {
         System.out.println("""
             Usage: java -jar excel-to-csv.jar [options] <column-name> <folder-path>
@@ -211,10 +588,37 @@ public class ExcelToCsvExtractor {
 
             Options:
               --merge, -m              Generate a single merged CSV file containing all data
+              --merge-order <order>    Merged row order: sorted (by source file), completion
+                                       (default: sorted)
+              --keep-files             With --merge, also write the per-file CSVs
+                                       (the merged CSV is then copied from them)
               --delimiter, -d <type>   CSV delimiter: comma, semicolon, tab, pipe, colon, space
                                        (default: semicolon)
               --encoding, -e <type>    CSV encoding: utf8, utf8bom, latin1, windows1252
                                        (default: utf8)
+              --engine <type>          Workbook reader: streaming, scanner (streaming with a
+                                       byte-level .xlsx sheet scanner), usermodel
+                                       (default: streaming)
+              --shared-strings <mode>  .xlsx shared strings: memory (whole table),
+                                       selective (target column only, two passes),
+                                       mapped (off-heap temp file)
+                                       (default: memory)
+              --pipelined-inflate      Inflate large .xlsx sheets on a separate thread
+                                       while they are parsed
+              --parallel-rows          Parse large single sheets in row ranges on all cores
+                                       (.xlsx with the streaming engines, .xml)
+              --memory-budget <MB>     Heap budget for files processed concurrently
+                                       (default: 60% of max heap)
+              --threads, -t <n|auto>   Parser threads (default: one per CPU core);
+                                       auto tunes files in flight from measured throughput
+              --schedule <policy>      File order: largest, smallest, history, listing
+                                       (default: largest); history records parse times
+                                       in CSV/logs/timings.properties
+              --scramble               Replace values with repeatable keyed pseudonyms
+                                       (key: $EXCEL_TO_CSV_SCRAMBLE_KEY or ~/.excel-to-csv/scramble.key)
+              --paranoid-verify        Re-read every written CSV to verify it
+                                       (quotes are always checked while writing)
+              --quiet, -q              Only print warnings and errors
 
             Supported formats:
               .xlsx         Excel 2007+ (OOXML)
@@ -228,6 +632,7 @@ public class ExcelToCsvExtractor {
             Example:
               java -jar excel-to-csv.jar email ./data
               java -jar excel-to-csv.jar --merge email ./data
+              java -jar excel-to-csv.jar --merge --merge-order completion email ./data
               java -jar excel-to-csv.jar -d comma email ./data
               java -jar excel-to-csv.jar -e utf8bom email ./data
             """);
@@ -244,36 +649,56 @@ public class ExcelToCsvExtractor {
     /**
      * Process all Excel files in the specified folder.
      * When mergeOutput is true, individual CSV files are not written.
-     * When scrambleOutput is true, text values are scrambled for debug purposes.
+     * When scrambleOutput is true, values are replaced by keyed, format-preserving pseudonyms (see {@link Pseudonymizer}).
+     * The results retain the extracted values, as this overload always did.
      */
     public static List<ExtractionResult> processExcelFiles(Path folder, String columnName, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            var excelFiles = findExcelFiles(folder);
-
-            if (excelFiles.isEmpty()) {
-                System.out.println("No Excel files found in " + folder);
-                return List.of();
-            }
-
-            // Create CSV output folder
-            var csvFolder = folder.resolve(CSV_FOLDER);
-            Files.createDirectories(csvFolder);
+        var options = ExtractionOptions.builder()
+            .mergeOutput(mergeOutput)
+            .scrambleOutput(scrambleOutput)
+            .delimiter(delimiter)
+            .encoding(encoding)
+            .retainValues(true)
+            .build();
+        return processExcelFiles(folder, columnName, options);
+    }
 
-            var futures = excelFiles.stream()
-                .map(file -> executor.submit(() -> processFile(file, columnName, csvFolder, mergeOutput, scrambleOutput, delimiter, encoding)))
-                .toList();
+    /**
+     * Process all Excel files in the specified folder with the given options.
+     * Files are admitted against the memory budget and run through the
+     * prefetch/parse/write stages of an {@link ExtractionPipeline}.
+     * Hosts that extract repeatedly should keep an {@link Extractor} instead, which reuses its resources across runs.
+     */
+    public static List<ExtractionResult> processExcelFiles(Path folder, String columnName, ExtractionOptions options) {
+        return processExcelFiles(folder, columnName, options, _ -> {
+        });
+    }
 
-            return futures.stream()
-                .map(ExcelToCsvExtractor::getFutureResult)
-                .toList();
+    /**
+     * Process all Excel files in the specified folder, reporting each result as soon as it is produced.
+     * The listener is called in completion order from a single pipeline thread, so it needs no
+     * synchronization of its own but should return quickly: the next result waits for it.
+     * Exceptions thrown by the listener are reported and do not stop the extraction.
+     * The returned list is the same as without a listener, in folder listing order.
+     */
+    public static List<ExtractionResult> processExcelFiles(Path folder, String columnName, ExtractionOptions options, Consumer<? super ExtractionResult> listener) {
+        return new Extractor(options).extract(folder, columnName, listener);
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error processing files: " + e.getMessage());
-            return List.of();
-        }
+    /**
+     * Publishes the column values of all Excel files in the folder instead of writing CSVs.
+     * Every subscription runs its own extraction, and parsing pauses while the subscriber has no demand,
+     * so memory stays bounded however slowly rows are consumed. The options that apply are those of reading
+     * and scrambling: engine, shared strings mode, pipelined inflate, parallel rows and scramble output;
+     * the output, scheduling and memory options do not. Hosts that publish repeatedly should keep an
+     * {@link Extractor} and call {@link Extractor#publishRows}, whose pooled contexts are reused across subscriptions.
+     * See {@link RowPublisher}.
+     */
+    public static Flow.Publisher<ExtractedRow> publishRows(Path folder, String columnName, ExtractionOptions options) {
+        return new Extractor(options).publishRows(folder, columnName);
     }
 
-    private static List<Path> findExcelFiles(Path folder) {
+    static List<Path> findExcelFiles(Path folder) {
         try (var stream = Files.list(folder)) {
             return stream
                 .filter(Files::isRegularFile)
@@ -283,34 +708,18 @@ public class ExcelToCsvExtractor {
                 })
                 .toList();
         } catch (IOException e) {
-            System.err.println("Error listing directory: " + e.getMessage());
+            Log.error("Error listing directory: " + e.getMessage());
             return List.of();
         }
     }
 
-    private static ExtractionResult getFutureResult(Future<ExtractionResult> future) {
-        try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
-            return new ExtractionFailure(Path.of("unknown"), e.getMessage());
-        }
-    }
-
-    private static ExtractionResult processFile(Path file, String columnName, Path csvFolder, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        System.out.println("Processing: " + file.getFileName());
-
+    /**
+     * Checks whether a file is an Office 2003 XML spreadsheet.
+     * Checks the file extension first, then verifies the content for xlsx/xls files.
+     */
+    static boolean isXmlSpreadsheet(Path file) {
         var fileName = file.getFileName().toString().toLowerCase();
-
-        try {
-            // Check file extension first, then verify content for xlsx/xls files
-            if (fileName.endsWith(".xml") || isRawXmlFile(file)) {
-                return processXmlSpreadsheet(file, columnName, csvFolder, mergeOutput, scrambleOutput, delimiter, encoding);
-            } else {
-                return processExcelFile(file, columnName, csvFolder, mergeOutput, scrambleOutput, delimiter, encoding);
-            }
-        } catch (Exception e) {
-            return new ExtractionFailure(file, e.getMessage());
-        }
+        return fileName.endsWith(".xml") || isRawXmlFile(file);
     }
 
     /**
@@ -343,181 +752,132 @@ public class ExcelToCsvExtractor {
         }
     }
 
-    private static ExtractionResult processExcelFile(Path file, String columnName, Path csvFolder, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        try (var is = Files.newInputStream(file);
-             var workbook = createWorkbook(file, is)) {
-
-            var sheet = workbook.getSheetAt(0);
-            var headerRow = sheet.getRow(0);
-
-            if (headerRow == null) {
-                return new ExtractionFailure(file, "No header row found");
-            }
-
-            var columnData = findColumn(headerRow, columnName);
-
-            return switch (columnData) {
-                case null -> new ExtractionFailure(file, "Column '" + columnName + "' not found");
-                case ColumnData(var index, _) -> {
-                    var values = extractColumnValues(sheet, index);
-                    // Only write individual CSV if not merging
-                    Path csvPath = mergeOutput ? null : writeCsv(file, values, csvFolder, scrambleOutput, delimiter, encoding);
-                    yield new ExtractionSuccess(file, csvPath, values.size(), values);
-                }
-            };
+    /**
+     * Extracts the target column of a file into the sink and returns the number of values read.
+     * Unless merging (without keepFileCsvs), the per-file CSV is written while the file is parsed; a partially
+     * written CSV is removed if extraction fails. When merging without per-file CSVs, the sink is the file's merge fragment.
+     * Called from the parse stage with the parse thread's context; failures are reported through the exception message.
+     */
+    static WrittenColumn extractColumn(Path file, ColumnMatcher column, boolean xmlSpreadsheet, Path csvFolder, ExtractionContext context, RowSink sink) throws IOException {
+        Log.info("Processing: " + file.getFileName());
+
+        var rowCount = new int[1];
+        RowSink counted = sink.andThen(_ -> rowCount[0]++);
+        if (!context.options().writesFileCsvs()) {
+            readColumn(file, column, xmlSpreadsheet, context, counted);
+            return new WrittenColumn(rowCount[0], 0, 0);
+        }
 
-        } catch (IOException e) {
-            return new ExtractionFailure(file, e.getMessage());
+        var csvPath = csvPathFor(file, csvFolder);
+        var csv = CsvRowWriter.open(csvPath, context);
+        try (csv) {
+            readColumn(file, column, xmlSpreadsheet, context, counted.andThen(csv));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(csvPath);
+            throw e;
         }
+        return new WrittenColumn(rowCount[0], csv.bytesWritten(), csv.checksum());
     }
 
-    private static ExtractionResult processXmlSpreadsheet(Path file, String columnName, Path csvFolder, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        try {
-            var factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            var builder = factory.newDocumentBuilder();
-            var doc = builder.parse(Files.newInputStream(file));
-
-            // Find all Row elements
-            var rows = findXmlRows(doc);
-
-            if (rows.isEmpty()) {
-                return new ExtractionFailure(file, "No rows found in XML spreadsheet");
-            }
-
-            // First row is header
-            var headerRow = rows.get(0);
-            var headerCells = getXmlRowCells(headerRow);
-
-            var columnIndex = findXmlColumnIndex(headerCells, columnName);
-
-            if (columnIndex < 0) {
-                return new ExtractionFailure(file, "Column '" + columnName + "' not found");
-            }
+    /**
+     * Path of a new merged CSV in the CSV folder, named after the current time.
+     */
+    static Path mergedCsvPath(Path csvFolder) {
+        var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        return csvFolder.resolve("merged_" + timestamp + ".csv");
+    }
 
-            // Extract values from data rows
-            var values = new ArrayList<String>();
-            for (int i = 1; i < rows.size(); i++) {
-                var cells = getXmlRowCells(rows.get(i));
-                if (columnIndex < cells.size()) {
-                    values.add(cells.get(columnIndex));
+    /**
+     * Reads the target column with the reader matching the file's format and engine.
+     */
+    static void readColumn(Path file, ColumnMatcher column, boolean xmlSpreadsheet, ExtractionContext context, RowSink sink) throws IOException {
+        try {
+            if (xmlSpreadsheet && context.options().parallelRows()) {
+                ParallelSheetReader.readColumn(file, "Row",
+                    (chunk, columnIndex, values) -> SpreadsheetMlReader.readChunk(chunk, column, columnIndex, values),
+                    values -> readXmlSpreadsheet(file, column, values), sink);
+            } else if (xmlSpreadsheet) {
+                readXmlSpreadsheet(file, column, sink);
+            } else if (context.options().engine() != ReaderEngine.USERMODEL) {
+                if (isXlsx(file)) {
+                    XlsxStreamingReader.readColumn(file, column, context, sink);
                 } else {
-                    values.add("");
+                    XlsEventReader.readColumn(file, column, sink);
                 }
+            } else {
+                readColumnFromWorkbook(file, column, sink);
             }
-
-            // Only write individual CSV if not merging
-            Path csvPath = mergeOutput ? null : writeCsv(file, values, csvFolder, scrambleOutput, delimiter, encoding);
-            return new ExtractionSuccess(file, csvPath, values.size(), values);
-
-        } catch (Exception e) {
-            return new ExtractionFailure(file, "XML parsing error: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            // Write errors raised inside a reader callback
+            throw e.getCause();
         }
     }
 
-    private static List<Element> findXmlRows(Document doc) {
-        var rows = new ArrayList<Element>();
-
-        // Office 2003 SpreadsheetML uses ss:Row elements
-        var nodeList = doc.getElementsByTagNameNS("urn:schemas-microsoft-com:office:spreadsheet", "Row");
-        if (nodeList.getLength() == 0) {
-            // Try without namespace
-            nodeList = doc.getElementsByTagName("Row");
-        }
-
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            if (nodeList.item(i) instanceof Element elem) {
-                rows.add(elem);
-            }
+    private static void readXmlSpreadsheet(Path file, ColumnMatcher column, RowSink sink) throws IOException {
+        try {
+            SpreadsheetMlReader.readColumn(file, column, sink);
+        } catch (ExtractionException | UncheckedIOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("XML parsing error: " + e.getMessage(), e);
         }
-
-        return rows;
     }
 
-    private static List<String> getXmlRowCells(Element rowElement) {
-        var cells = new ArrayList<String>();
-
-        // Office 2003 SpreadsheetML uses ss:Cell and ss:Data elements
-        var cellNodes = rowElement.getElementsByTagNameNS("urn:schemas-microsoft-com:office:spreadsheet", "Cell");
-        if (cellNodes.getLength() == 0) {
-            cellNodes = rowElement.getElementsByTagName("Cell");
-        }
+    static Path csvPathFor(Path excelFile, Path csvFolder) {
+        var csvName = excelFile.getFileName().toString()
+            .replaceAll("\\.(xlsx|xls|xml)$", ".csv");
+        return csvFolder.resolve(csvName);
+    }
 
-        for (int i = 0; i < cellNodes.getLength(); i++) {
-            if (cellNodes.item(i) instanceof Element cellElem) {
-                // Check for ss:Index attribute (for sparse cells)
-                var indexAttr = cellElem.getAttributeNS("urn:schemas-microsoft-com:office:spreadsheet", "Index");
-                if (indexAttr != null && !indexAttr.isEmpty()) {
-                    int targetIndex = Integer.parseInt(indexAttr) - 1; // 1-based to 0-based
-                    while (cells.size() < targetIndex) {
-                        cells.add("");
-                    }
-                }
+    /**
+     * Reads the column by loading the whole workbook (POI usermodel).
+     */
+    private static void readColumnFromWorkbook(Path file, ColumnMatcher column, RowSink values) throws IOException {
+        try (var workbook = createWorkbook(file)) {
 
-                var dataNodes = cellElem.getElementsByTagNameNS("urn:schemas-microsoft-com:office:spreadsheet", "Data");
-                if (dataNodes.getLength() == 0) {
-                    dataNodes = cellElem.getElementsByTagName("Data");
-                }
+            var sheet = workbook.getSheetAt(0);
+            var headerRow = sheet.getRow(0);
 
-                if (dataNodes.getLength() > 0) {
-                    cells.add(dataNodes.item(0).getTextContent().trim());
-                } else {
-                    cells.add("");
-                }
+            if (headerRow == null) {
+                throw new ExtractionException("No header row found");
             }
-        }
 
-        return cells;
-    }
-
-    private static int findXmlColumnIndex(List<String> headerCells, String columnName) {
-        var variants = List.of(
-            columnName.toLowerCase(),
-            columnName.toUpperCase(),
-            capitalize(columnName)
-        );
-
-        for (int i = 0; i < headerCells.size(); i++) {
-            var header = headerCells.get(i).trim();
-            for (var variant : variants) {
-                if (header.equalsIgnoreCase(variant)) {
-                    return i;
-                }
+            switch (findColumn(headerRow, column)) {
+                case null -> throw new ExtractionException("Column '" + column.columnName() + "' not found");
+                case ColumnData(var index, _) -> extractColumnValues(sheet, index).forEach(values::accept);
             }
         }
-        return -1;
     }
 
-    private static Workbook createWorkbook(Path file, InputStream is) throws IOException {
-        var fileName = file.getFileName().toString();
-        return fileName.endsWith(".xlsx")
-            ? new XSSFWorkbook(is)
-            : new HSSFWorkbook(is);
+    private static boolean isXlsx(Path file) {
+        return file.getFileName().toString().endsWith(".xlsx");
     }
 
-    private static ColumnData findColumn(Row headerRow, String columnName) {
-        var variants = List.of(
-            columnName.toLowerCase(),
-            columnName.toUpperCase(),
-            capitalize(columnName)
-        );
+    /**
+     * Opens the workbook directly from the file so POI reads the zip/OLE2 container
+     * with random access instead of buffering the whole stream in memory.
+     */
+    private static Workbook createWorkbook(Path file) throws IOException {
+        if (!isXlsx(file)) {
+            return new HSSFWorkbook(new POIFSFileSystem(file.toFile(), true));
+        }
+        try {
+            return new XSSFWorkbook(OPCPackage.open(file.toFile(), PackageAccess.READ));
+        } catch (InvalidFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
+    private static ColumnData findColumn(Row headerRow, ColumnMatcher column) {
         for (var cell : headerRow) {
             var header = getCellValue(cell).trim();
-            for (var variant : variants) {
-                if (header.equalsIgnoreCase(variant)) {
-                    return new ColumnData(cell.getColumnIndex(), header);
-                }
+            if (column.matches(header)) {
+                return new ColumnData(cell.getColumnIndex(), header);
             }
         }
         return null;
     }
 
-    private static String capitalize(String str) {
-        if (str == null || str.isEmpty()) return str;
-        return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
-    }
-
     private static List<String> extractColumnValues(Sheet sheet, int columnIndex) {
         return IntStream.rangeClosed(1, sheet.getLastRowNum())
             .mapToObj(sheet::getRow)
@@ -538,70 +898,17 @@ public class ExcelToCsvExtractor {
         };
     }
 
-    private static Path writeCsv(Path excelFile, List<String> values, Path csvFolder, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) throws IOException {
-        var csvName = excelFile.getFileName().toString()
-            .replaceAll("\\.(xlsx|xls|xml)$", ".csv");
-        var csvPath = csvFolder.resolve(csvName);
-
-        var content = buildCsvContent(values, scrambleOutput, delimiter);
-        writeWithEncoding(csvPath, content, encoding);
-
-        // Validate the output CSV
-        validateCsv(csvPath);
-
-        return csvPath;
-    }
-
-    /**
-     * Writes content to a file with the specified encoding, including BOM if required.
-     */
-    private static void writeWithEncoding(Path path, String content, CsvEncoding encoding) throws IOException {
-        byte[] contentBytes = content.getBytes(encoding.getCharset());
-        if (encoding.hasBom()) {
-            try (var out = Files.newOutputStream(path)) {
-                out.write(encoding.getBom());
-                out.write(contentBytes);
-            }
-        } else {
-            Files.write(path, contentBytes);
-        }
-    }
-
-    /**
-     * Builds CSV content from a list of values.
-     * Filters out empty values and applies scrambling if requested.
-     */
-    private static String buildCsvContent(List<String> values, boolean scrambleOutput, CsvDelimiter delimiter) {
-        var filteredValues = values.stream()
-            .filter(value -> value != null && !value.trim().isEmpty())
-            .toList();
-
-        var content = new StringBuilder();
-        for (var value : filteredValues) {
-            var outputValue = scrambleOutput ? scrambleText(value) : value;
-            content.append(escapeCsvValue(outputValue, delimiter))
-                   .append(delimiter.getSeparator())
-                   .append(System.lineSeparator());
-        }
-        return content.toString();
-    }
-
     /**
      * Escapes a value for CSV format.
      * If the value contains the separator, quotes, or newlines, it must be quoted.
      */
-    private static String escapeCsvValue(String value, CsvDelimiter delimiter) {
+    static String escapeCsvValue(String value, CsvDelimiter delimiter) {
         if (value == null) {
             return "";
         }
 
-        // Check if the value needs to be quoted
-        boolean needsQuoting = value.contains(delimiter.getSeparator())
-            || value.contains("\"")
-            || value.contains("\n")
-            || value.contains("\r");
-
-        if (needsQuoting) {
+        // Check if the value needs to be quoted (one pass for all special characters)
+        if (CsvEscaper.needsQuoting(value, delimiter.getSeparator().charAt(0))) {
             // Escape double quotes by doubling them and wrap in quotes
             return "\"" + value.replace("\"", "\"\"") + "\"";
         }
@@ -610,65 +917,12 @@ public class ExcelToCsvExtractor {
     }
 
     /**
-     * Scrambles text by shuffling characters within each word.
-     * Preserves the overall structure (spaces, punctuation) for debug purposes.
-     * This is used for anonymizing data in debug output.
+     * Validates that a CSV file is properly formatted by reading it back.
+     * Only used with --paranoid-verify; CsvRowWriter checks every field as it is written.
+     * Quoted fields may span lines. Throws IOException if the CSV is invalid.
      */
-    private static String scrambleText(String text) {
-        if (text == null || text.isEmpty()) {
-            return text;
-        }
-
-        var result = new StringBuilder();
-        var word = new StringBuilder();
-        var random = new Random(text.hashCode()); // Deterministic scrambling based on input
-
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (Character.isLetterOrDigit(c)) {
-                word.append(c);
-            } else {
-                // Scramble the accumulated word and append it
-                if (!word.isEmpty()) {
-                    result.append(scrambleWord(word.toString(), random));
-                    word.setLength(0);
-                }
-                result.append(c);
-            }
-        }
-
-        // Handle any remaining word
-        if (!word.isEmpty()) {
-            result.append(scrambleWord(word.toString(), random));
-        }
-
-        return result.toString();
-    }
-
-    /**
-     * Scrambles a single word by shuffling its characters.
-     */
-    private static String scrambleWord(String word, Random random) {
-        if (word.length() <= 1) {
-            return word;
-        }
-
-        var chars = word.toCharArray();
-        for (int i = chars.length - 1; i > 0; i--) {
-            int j = random.nextInt(i + 1);
-            char temp = chars[i];
-            chars[i] = chars[j];
-            chars[j] = temp;
-        }
-        return new String(chars);
-    }
-
-    /**
-     * Validates that a CSV file is properly formatted.
-     * Throws IOException if the CSV is invalid.
-     */
-    private static void validateCsv(Path csvPath) throws IOException {
-        var content = Files.readString(csvPath);
+    static void validateCsv(Path csvPath, CsvEncoding encoding) throws IOException {
+        var content = Files.readString(csvPath, encoding.getCharset());
 
         // Check that file is not empty (allow empty files for empty input)
         if (content.isEmpty()) {
@@ -677,27 +931,25 @@ public class ExcelToCsvExtractor {
 
         var lines = content.split(System.lineSeparator(), -1);
 
+        boolean inQuotes = false;
+        int fieldStartLine = 0;
         for (int lineNum = 0; lineNum < lines.length; lineNum++) {
-            var line = lines[lineNum];
-
-            // Skip empty lines at the end
-            if (line.isEmpty() && lineNum == lines.length - 1) {
-                continue;
+            if (!inQuotes) {
+                fieldStartLine = lineNum;
             }
+            inQuotes = endsInQuotes(lines[lineNum], inQuotes);
+        }
 
-            // Validate quoted fields are properly closed
-            if (!isValidCsvLine(line)) {
-                throw new IOException("Invalid CSV at line " + (lineNum + 1) + ": unbalanced quotes");
-            }
+        // Validate quoted fields are properly closed
+        if (inQuotes) {
+            throw new IOException("Invalid CSV at line " + (fieldStartLine + 1) + ": unbalanced quotes");
         }
     }
 
     /**
-     * Checks if a CSV line has balanced quotes.
+     * Scans a CSV line for quotes and returns whether it ends inside a quoted field.
      */
-    private static boolean isValidCsvLine(String line) {
-        boolean inQuotes = false;
-
+    private static boolean endsInQuotes(String line, boolean inQuotes) {
         for (int i = 0; i < line.length(); i++) {
             char c = line.charAt(i);
 
@@ -711,11 +963,10 @@ public class ExcelToCsvExtractor {
             }
         }
 
-        // Quotes should be balanced (not inside a quoted field at end of line)
-        return !inQuotes;
+        return inQuotes;
     }
 
-    private static void printResults(List<ExtractionResult> results, Path folder, boolean mergeOutput, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
+    private static void printResults(List<ExtractionResult> results, Path folder) {
         var successes = new ArrayList<ExtractionSuccess>();
         var failures = new ArrayList<ExtractionFailure>();
 
@@ -725,58 +976,29 @@ public class ExcelToCsvExtractor {
                     successes.add(s);
                     // Only print individual CSV message if not merging
                     if (s.csvFile() != null) {
-                        System.out.println("Created CSV: " + s.csvFile().getFileName() + " (" + s.rowCount() + " rows)");
+                        Log.info("Created CSV: " + s.csvFile().getFileName() + " (" + s.rowCount() + " rows)");
                     } else {
-                        System.out.println("Extracted from: " + s.sourceFile().getFileName() + " (" + s.rowCount() + " rows)");
+                        Log.info("Extracted from: " + s.sourceFile().getFileName() + " (" + s.rowCount() + " rows)");
                     }
                 }
                 case ExtractionFailure f -> {
                     failures.add(f);
-                    System.err.println("Error - " + f.sourceFile().getFileName() + ": " + f.errorMessage());
+                    Log.error("Error - " + f.sourceFile().getFileName() + ": " + f.errorMessage());
                 }
             }
         }
 
-        // Write merged CSV if requested
-        if (mergeOutput && !successes.isEmpty()) {
-            writeMergedCsv(folder, successes, scrambleOutput, delimiter, encoding);
-        }
-
         if (!failures.isEmpty()) {
             writeErrorLog(folder, failures);
         }
 
-        System.out.println("""
+        Log.info("""
 
             Summary:
               Successful: %d files
               Failed: %d files
             """.formatted(successes.size(), failures.size()));
-    }
-
-    private static void writeMergedCsv(Path folder, List<ExtractionSuccess> successes, boolean scrambleOutput, CsvDelimiter delimiter, CsvEncoding encoding) {
-        var csvFolder = folder.resolve(CSV_FOLDER);
-        var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        var mergedPath = csvFolder.resolve("merged_" + timestamp + ".csv");
-
-        try {
-            var allValues = successes.stream()
-                .flatMap(s -> s.values().stream())
-                .toList();
-
-            var content = buildCsvContent(allValues, scrambleOutput, delimiter);
-            writeWithEncoding(mergedPath, content, encoding);
-
-            // Validate the output CSV
-            validateCsv(mergedPath);
-
-            var valueCount = allValues.stream()
-                .filter(value -> value != null && !value.trim().isEmpty())
-                .count();
-            System.out.println("Created merged CSV: " + mergedPath.getFileName() + " (" + valueCount + " values)");
-        } catch (IOException e) {
-            System.err.println("Failed to write merged CSV: " + e.getMessage());
-        }
+        Log.flush();
     }
 
     private static void writeErrorLog(Path folder, List<ExtractionFailure> failures) {
@@ -785,7 +1007,7 @@ public class ExcelToCsvExtractor {
         try {
             Files.createDirectories(logsFolder);
         } catch (IOException e) {
-            System.err.println("Failed to create logs folder: " + e.getMessage());
+            Log.error("Failed to create logs folder: " + e.getMessage());
             return;
         }
 
@@ -806,9 +1028,9 @@ public class ExcelToCsvExtractor {
 
         try {
             Files.writeString(logPath, logContent);
-            System.out.println("Error log written to: " + CSV_FOLDER + "/" + LOGS_FOLDER + "/" + logPath.getFileName());
+            Log.info("Error log written to: " + CSV_FOLDER + "/" + LOGS_FOLDER + "/" + logPath.getFileName());
         } catch (IOException e) {
-            System.err.println("Failed to write error log: " + e.getMessage());
+            Log.error("Failed to write error log: " + e.getMessage());
         }
     }
 }
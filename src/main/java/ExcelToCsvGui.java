@@ -25,6 +25,8 @@ public class ExcelToCsvGui extends JFrame {
     private JTextArea outputArea;
     private JProgressBar progressBar;
     private JLabel statusLabel;
+    // Kept across runs so its buffers and encoders are reused; replaced when the options change
+    private Extractor extractor;
 
     public ExcelToCsvGui() {
         initializeUI();
@@ -137,12 +139,12 @@ public class ExcelToCsvGui extends JFrame {
         mergeCheckbox.setToolTipText("Generate one merged CSV containing data from all processed files");
         panel.add(mergeCheckbox, gbc);
 
-        // Debug scramble option row
+        // Scramble option row
         gbc.gridx = 1;
         gbc.gridy = 5;
         gbc.gridwidth = 2;
-        scrambleCheckbox = new JCheckBox("Scramble output text (Debug)");
-        scrambleCheckbox.setToolTipText("For debug purposes only: scrambles/randomizes text in CSV output to anonymize data");
+        scrambleCheckbox = new JCheckBox("Scramble output text (pseudonymize)");
+        scrambleCheckbox.setToolTipText("Replaces values with keyed pseudonyms that keep their format; the same value always gets the same pseudonym");
         panel.add(scrambleCheckbox, gbc);
 
         // Extract button row
@@ -237,7 +239,11 @@ public class ExcelToCsvGui extends JFrame {
         // Run extraction in background thread
         var delimiter = (ExcelToCsvExtractor.CsvDelimiter) delimiterComboBox.getSelectedItem();
         var encoding = (ExcelToCsvExtractor.CsvEncoding) encodingComboBox.getSelectedItem();
-        var worker = new ExtractionWorker(folder, columnName, mergeCheckbox.isSelected(), scrambleCheckbox.isSelected(), delimiter, encoding);
+        var options = ExcelToCsvExtractor.ExtractionOptions.forOutput(mergeCheckbox.isSelected(), scrambleCheckbox.isSelected(), delimiter, encoding);
+        if (extractor == null || !extractor.options().equals(options)) {
+            extractor = new Extractor(options);
+        }
+        var worker = new ExtractionWorker(folder, columnName, extractor);
         worker.execute();
     }
 
@@ -270,18 +276,15 @@ public class ExcelToCsvGui extends JFrame {
 
         private final Path folder;
         private final String columnName;
-        private final boolean mergeOutput;
-        private final boolean scrambleOutput;
-        private final ExcelToCsvExtractor.CsvDelimiter delimiter;
-        private final ExcelToCsvExtractor.CsvEncoding encoding;
+        private final Extractor extractor;
+        // Updated only by the pipeline's write thread
+        private int completed;
+        private int failed;
 
-        ExtractionWorker(Path folder, String columnName, boolean mergeOutput, boolean scrambleOutput, ExcelToCsvExtractor.CsvDelimiter delimiter, ExcelToCsvExtractor.CsvEncoding encoding) {
+        ExtractionWorker(Path folder, String columnName, Extractor extractor) {
             this.folder = folder;
             this.columnName = columnName;
-            this.mergeOutput = mergeOutput;
-            this.scrambleOutput = scrambleOutput;
-            this.delimiter = delimiter;
-            this.encoding = encoding;
+            this.extractor = extractor;
         }
 
         @Override
@@ -296,10 +299,12 @@ public class ExcelToCsvGui extends JFrame {
                 var guiErr = new PrintStream(new GuiOutputStream(this::publish, true));
                 System.setOut(guiOut);
                 System.setErr(guiErr);
+                // Extraction messages arrive from the log's drain thread, one chunk per batch
+                Log.setConsumer(this::publishEvents);
 
-                // Run extraction
-                var results = ExcelToCsvExtractor.processExcelFiles(folder, columnName, mergeOutput, scrambleOutput, delimiter, encoding);
-                ExcelToCsvExtractor.handleResults(results, folder, mergeOutput, scrambleOutput, delimiter, encoding);
+                // Run extraction, updating the progress bar as each file completes
+                var results = extractor.extract(folder, columnName, this::fileCompleted);
+                ExcelToCsvExtractor.handleResults(results, folder);
 
                 // Count successes and failures
                 int successCount = 0;
@@ -315,11 +320,34 @@ public class ExcelToCsvGui extends JFrame {
                 return new ExtractionSummary(successCount, failureCount);
 
             } finally {
+                Log.setConsumer(null);
                 System.setOut(originalOut);
                 System.setErr(originalErr);
             }
         }
 
+        private void publishEvents(List<Log.Event> events) {
+            var text = new StringBuilder();
+            for (var event : events) {
+                if (event.level().compareTo(Log.Level.WARN) >= 0) {
+                    text.append('[').append(event.level()).append("] ");
+                }
+                text.append(event.message()).append('\n');
+            }
+            publish(text.toString());
+        }
+
+        /**
+         * Called from the extraction pipeline as each file completes.
+         */
+        private void fileCompleted(ExcelToCsvExtractor.ExtractionResult result) {
+            if (result instanceof ExcelToCsvExtractor.ExtractionFailure) {
+                failed++;
+            }
+            var progress = ++completed + " files processed" + (failed > 0 ? " (" + failed + " failed)" : "");
+            SwingUtilities.invokeLater(() -> progressBar.setString(progress));
+        }
+
         @Override
         protected void process(List<String> chunks) {
             for (var chunk : chunks) {
@@ -0,0 +1,100 @@
+import org.apache.poi.util.XMLHelper;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reusable per-thread state for extracting files: the CSV output buffer, encoder and escaper,
+ * the pseudonymizer with its cache, and the SAX reader and scan buffer for .xlsx sheets.
+ * A parse thread takes one context from the {@link Pool} for a whole run and processes its files with it,
+ * so none of these are rebuilt per file, and a long-lived {@link Extractor} reuses them across runs.
+ * Not thread-safe; only one CSV writer may use a context at a time.
+ */
+final class ExtractionContext {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final ExcelToCsvExtractor.ExtractionOptions options;
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    final CharsetEncoder encoder;
+    final CsvEscaper escaper;
+    // Separator and line break written after every field
+    final CharBuffer rowEnd;
+    private Pseudonymizer pseudonymizer;
+    private XMLReader xmlReader;
+    private byte[] sheetBuffer;
+
+    ExtractionContext(ExcelToCsvExtractor.ExtractionOptions options) {
+        this.options = options;
+        // Same substitution behaviour as String.getBytes for unmappable characters
+        this.encoder = options.encoding().getCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.escaper = new CsvEscaper(options.delimiter());
+        this.rowEnd = CharBuffer.wrap(options.delimiter().getSeparator() + LINE_SEPARATOR);
+    }
+
+    ExcelToCsvExtractor.ExtractionOptions options() {
+        return options;
+    }
+
+    /**
+     * The pseudonymizer when scrambling is requested, otherwise null. Loads the key on first use.
+     */
+    Pseudonymizer pseudonymizer() throws IOException {
+        if (options.scrambleOutput() && pseudonymizer == null) {
+            pseudonymizer = Pseudonymizer.withConfiguredKey();
+        }
+        return pseudonymizer;
+    }
+
+    /**
+     * The SAX reader for sheet XML; created on first use and reused for every later sheet.
+     */
+    XMLReader xmlReader() throws SAXException, ParserConfigurationException {
+        if (xmlReader == null) {
+            xmlReader = XMLHelper.newXMLReader();
+        }
+        return xmlReader;
+    }
+
+    /**
+     * The read buffer of the byte-level sheet scanner; created on first use.
+     */
+    byte[] sheetBuffer() {
+        if (sheetBuffer == null) {
+            sheetBuffer = new byte[BUFFER_SIZE];
+        }
+        return sheetBuffer;
+    }
+
+    /**
+     * Contexts for one set of options. Contexts are created on demand, so the pool grows to the
+     * number of threads that extract at the same time.
+     */
+    static final class Pool {
+        private final ExcelToCsvExtractor.ExtractionOptions options;
+        private final ConcurrentLinkedQueue<ExtractionContext> idle = new ConcurrentLinkedQueue<>();
+
+        Pool(ExcelToCsvExtractor.ExtractionOptions options) {
+            this.options = options;
+        }
+
+        ExtractionContext acquire() {
+            var context = idle.poll();
+            return context != null ? context : new ExtractionContext(options);
+        }
+
+        void release(ExtractionContext context) {
+            idle.offer(context);
+        }
+    }
+}
@@ -0,0 +1,515 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Staged per-file pipeline: prefetch, parse and write.
+ * <ul>
+ *   <li>Prefetch runs on virtual threads: detects the format and reads the file once
+ *       to warm the OS page cache, so parsing does not stall on slow disks or network shares.</li>
+ *   <li>Parse runs on a fixed pool of platform threads (one per core by default),
+ *       since POI parsing is CPU-bound. Per-file CSVs are streamed out while parsing.
+ *       Each parse thread works with one {@link ExtractionContext} from the extractor's pool.</li>
+ *   <li>Write runs on its own thread: it builds the results (and re-reads the CSVs with --paranoid-verify)
+ *       and hands each one to the result listener as soon as it is built.
+ *       When merging in source file order, it appends each file's encoded rows to the {@link MergedCsvWriter};
+ *       in completion order the parse threads append them concurrently without going through this stage,
+ *       unless the per-file CSVs are re-read with --paranoid-verify: a file's rows are only merged once it passed.</li>
+ * </ul>
+ * Stages are connected by bounded queues and admission is gated by the {@link AdmissionController}.
+ * Tasks are admitted in the order planned by the {@link FileScheduler}; a task is either one file
+ * or a batch of tiny files that travels through the stages as a single item.
+ * With adaptive concurrency the admission window is tuned at runtime by a {@link ConcurrencyController}.
+ * <p>
+ * A file that fails to parse becomes a failed result. Anything else the stages throw (an Error while parsing,
+ * a failure of the write stage or the result listener) fails the run: admission is aborted, the stages skip
+ * what is still queued until their end markers, and run throws.
+ */
+final class ExtractionPipeline {
+
+    // Files larger than this are only partially prefetched
+    private static final long PREFETCH_LIMIT = 256L * 1024 * 1024;
+    private static final int PREFETCH_BUFFER_SIZE = 64 * 1024;
+    // Files admitted at once per parse thread, independent of the memory budget
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+    // Prefetched batches queued per parse thread
+    private static final int PREFETCH_DEPTH_PER_THREAD = 2;
+
+    private record Prefetched(int index, Path file, boolean xml, long size, long cost) {}
+
+    private record Parsed(int index, Path file, long cost, ExcelToCsvExtractor.WrittenColumn written, List<String> values, MergedCsvWriter.Fragment fragment, String error) {}
+
+    private static final List<Prefetched> END_OF_PARSE = List.of();
+    private static final Parsed END_OF_WRITE = new Parsed(-1, null, 0, null, null, null, null);
+
+    private final ColumnMatcher column;
+    private final Path csvFolder;
+    private final ExcelToCsvExtractor.ExtractionOptions options;
+    private final ExtractionContext.Pool contexts;
+    private final int threads;
+
+    private final BlockingQueue<List<Prefetched>> parseQueue;
+    private final BlockingQueue<Parsed> writeQueue;
+    private final StageStats prefetchStats = new StageStats("prefetch");
+    private final StageStats parseStats = new StageStats("parse");
+    private final StageStats writeStats = new StageStats("write");
+    private AdmissionController admission;
+    private ConcurrencyController concurrency;
+    // First failure of the run; later ones are added as suppressed
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // Only set when merging. Parse threads fill fragments and, in completion order, append them;
+    // in source file order, or when the per-file CSVs are verified first, the write thread appends them
+    private MergedCsvWriter merge;
+    private final AtomicReference<String> mergeError = new AtomicReference<>();
+
+    ExtractionPipeline(ColumnMatcher column, Path csvFolder, ExcelToCsvExtractor.ExtractionOptions options, ExtractionContext.Pool contexts) {
+        this.column = column;
+        this.csvFolder = csvFolder;
+        this.options = options;
+        this.contexts = contexts;
+        this.threads = options.threads() > 0 ? options.threads() : Runtime.getRuntime().availableProcessors();
+        this.parseQueue = new ArrayBlockingQueue<>(threads * PREFETCH_DEPTH_PER_THREAD);
+        this.writeQueue = new ArrayBlockingQueue<>(threads * 2);
+    }
+
+    /**
+     * Runs all files through the pipeline and returns their results in input order.
+     * Each result is also passed to the listener when its file completes, from the write thread.
+     */
+    ExcelToCsvExtractor.ExtractionResult[] run(List<Path> files, Consumer<? super ExcelToCsvExtractor.ExtractionResult> listener) throws InterruptedException, IOException {
+        var results = new ExcelToCsvExtractor.ExtractionResult[files.size()];
+        var parseNanos = new long[files.size()];
+        admission = new AdmissionController(options.memoryBudgetMb(), threads * IN_FLIGHT_PER_THREAD);
+        if (options.adaptiveConcurrency()) {
+            // More files in flight than the parse threads plus the queued batches only wait for admission
+            concurrency = new ConcurrencyController(admission, threads + threads * PREFETCH_DEPTH_PER_THREAD);
+        }
+
+        var sizes = FileScheduler.sizesOf(files);
+        // Timings are only kept for history scheduling, so other runs leave no timings file behind
+        var history = options.schedule() == ExcelToCsvExtractor.SchedulePolicy.HISTORY
+            ? FileScheduler.TimingHistory.load(csvFolder.resolve(ExcelToCsvExtractor.LOGS_FOLDER))
+            : null;
+        var tasks = FileScheduler.plan(files, sizes, options.schedule(), history);
+
+        if (options.mergeOutput()) {
+            merge = new MergedCsvWriter(ExcelToCsvExtractor.mergedCsvPath(csvFolder), csvFolder, files, options);
+        }
+
+        var parsers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            parsers.add(Thread.ofPlatform().name("parse-" + i).start(() -> parseLoop(parseNanos)));
+        }
+        var writer = Thread.ofPlatform().name("csv-writer").start(() -> writeLoop(results, parseNanos, listener));
+
+        try (var prefetchers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var task : tasks) {
+                var costs = new long[task.length];
+                for (int i = 0; i < task.length; i++) {
+                    costs[i] = AdmissionController.estimateCost(files.get(task[i]), options.engine());
+                }
+                if (!admission.acquire(costs)) {
+                    break;
+                }
+                prefetchers.execute(() -> prefetch(task, costs, files, sizes));
+            }
+        } finally {
+            // Stop the stage threads even if admission was interrupted
+            for (int i = 0; i < threads; i++) {
+                putUninterruptibly(parseQueue, END_OF_PARSE, null);
+            }
+            for (var parser : parsers) {
+                parser.join();
+            }
+            putUninterruptibly(writeQueue, END_OF_WRITE, null);
+            writer.join();
+            if (concurrency != null) {
+                concurrency.close();
+            }
+        }
+
+        var error = failure.get();
+        if (error != null) {
+            if (merge != null) {
+                merge.discard();
+            }
+            if (error instanceof Error e) {
+                throw e;
+            }
+            throw new IOException("Extraction failed: " + error, error);
+        }
+
+        if (merge != null) {
+            finishMerge();
+        }
+
+        if (history != null) {
+            for (int i = 0; i < parseNanos.length; i++) {
+                if (parseNanos[i] > 0) {
+                    history.record(files.get(i), sizes[i], parseNanos[i]);
+                }
+            }
+            history.save();
+        }
+
+        return results;
+    }
+
+    /**
+     * One line per stage: files handled, busy time and peak queue depth.
+     */
+    String stageSummary() {
+        var summary = """
+            Stages:
+              %s
+              %s (%d threads, queue peak %d/%d)
+              %s (queue peak %d/%d)
+            """.formatted(
+                prefetchStats,
+                parseStats, threads, parseStats.queuePeak.get(), threads * PREFETCH_DEPTH_PER_THREAD,
+                writeStats, writeStats.queuePeak.get(), threads * 2);
+        return concurrency != null ? summary + concurrency.report() : summary;
+    }
+
+    private void prefetch(int[] task, long[] costs, List<Path> files, long[] sizes) {
+        var batch = new ArrayList<Prefetched>(task.length);
+        for (int i = 0; i < task.length; i++) {
+            long start = System.nanoTime();
+            var file = files.get(task[i]);
+            var xml = ExcelToCsvExtractor.isXmlSpreadsheet(file);
+            warmPageCache(file);
+            prefetchStats.record(start);
+            batch.add(new Prefetched(task[i], file, xml, sizes[task[i]], costs[i]));
+        }
+        putUninterruptibly(parseQueue, batch, parseStats);
+    }
+
+    /**
+     * Reads the file sequentially and discards the bytes, so the parse stage finds it in the page cache.
+     */
+    private static void warmPageCache(Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(PREFETCH_BUFFER_SIZE);
+            long total = 0;
+            int read;
+            while (total < PREFETCH_LIMIT && (read = channel.read(buffer)) > 0) {
+                total += read;
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            // The parse stage reports unreadable files
+        }
+    }
+
+    private void parseLoop(long[] parseNanos) {
+        // One context per parse thread for the whole run, returned to the pool for the next run
+        var context = contexts.acquire();
+        try {
+            parseBatches(context, parseNanos);
+        } catch (Throwable e) {
+            fail(e);
+            // Skips the remaining tasks up to the end marker, so the prefetchers are not blocked
+            parseBatches(context, parseNanos);
+        } finally {
+            contexts.release(context);
+        }
+    }
+
+    private void parseBatches(ExtractionContext context, long[] parseNanos) {
+        while (true) {
+            var batch = takeUninterruptibly(parseQueue);
+            if (batch == END_OF_PARSE) {
+                return;
+            }
+            if (failure.get() != null) {
+                continue;
+            }
+
+            for (var item : batch) {
+                long start = System.nanoTime();
+                Parsed parsed;
+                MergedCsvWriter.Fragment fragment = null;
+                try {
+                    List<String> values = null;
+                    var rowsWritten = new long[1];
+                    RowSink sink;
+                    if (merge == null && options.retainValues()) {
+                        values = new ArrayList<>();
+                        sink = values::add;
+                    } else if (merge == null) {
+                        sink = _ -> {
+                        };
+                    } else if (options.writesFileCsvs()) {
+                        // The merged CSV is copied from the per-file CSV afterwards
+                        sink = value -> {
+                            if (CsvRowWriter.isWritten(value)) {
+                                rowsWritten[0]++;
+                            }
+                        };
+                    } else {
+                        fragment = merge.newFragment(context);
+                        sink = fragment;
+                    }
+                    if (concurrency != null) {
+                        sink = concurrency.counting(sink);
+                    }
+                    var written = ExcelToCsvExtractor.extractColumn(item.file(), column, item.xml(), csvFolder, context, sink);
+                    if (merge != null && fragment == null) {
+                        fragment = merge.fileFragment(ExcelToCsvExtractor.csvPathFor(item.file(), csvFolder), rowsWritten[0]);
+                    }
+                    if (fragment != null) {
+                        fragment.finish();
+                        if (!options.writesFileCsvs()) {
+                            written = new ExcelToCsvExtractor.WrittenColumn(written.rowCount(), fragment.bytesWritten(), fragment.checksum());
+                        }
+                        if (!appendsInWriteStage()) {
+                            appendToMerge(item.index(), fragment);
+                            fragment = null;
+                        }
+                    }
+                    parsed = new Parsed(item.index(), item.file(), item.cost(), written, values, fragment, null);
+                } catch (Exception e) {
+                    if (fragment != null) {
+                        fragment.discard();
+                    }
+                    // write tells a failure by its message, so it must not be null
+                    parsed = new Parsed(item.index(), item.file(), item.cost(), null, null, null, Objects.toString(e.getMessage(), e.toString()));
+                } catch (Error e) {
+                    // Not a problem of the file: fails the run in parseLoop
+                    if (fragment != null) {
+                        fragment.discard();
+                    }
+                    throw e;
+                }
+                parseNanos[item.index()] = System.nanoTime() - start;
+                parseStats.record(start);
+                if (concurrency != null) {
+                    concurrency.fileCompleted(item.size());
+                }
+                putUninterruptibly(writeQueue, parsed, writeStats);
+            }
+        }
+    }
+
+    /**
+     * Runs until the end marker whatever happens, since the parse threads block on a full write queue.
+     * After a failure the remaining items are only freed.
+     */
+    private void writeLoop(ExcelToCsvExtractor.ExtractionResult[] results, long[] parseNanos, Consumer<? super ExcelToCsvExtractor.ExtractionResult> listener) {
+        while (true) {
+            var item = takeUninterruptibly(writeQueue);
+            if (item == END_OF_WRITE) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (failure.get() != null) {
+                    if (item.fragment() != null) {
+                        item.fragment().discard();
+                    }
+                    continue;
+                }
+                results[item.index()] = write(item, parseNanos[item.index()]);
+                writeStats.record(start);
+                notify(listener, results[item.index()]);
+            } catch (Throwable e) {
+                if (item.fragment() != null) {
+                    item.fragment().discard();
+                }
+                fail(e);
+            } finally {
+                admission.release(item.cost());
+            }
+        }
+    }
+
+    /**
+     * Records a failure of the run and stops admission; the stages then drain their queues.
+     */
+    private void fail(Throwable e) {
+        if (!failure.compareAndSet(null, e) && failure.get() != e) {
+            failure.get().addSuppressed(e);
+        }
+        admission.abort();
+    }
+
+    /**
+     * A failing listener must not stop the write stage, which would stall the whole pipeline.
+     */
+    private static void notify(Consumer<? super ExcelToCsvExtractor.ExtractionResult> listener, ExcelToCsvExtractor.ExtractionResult result) {
+        try {
+            listener.accept(result);
+        } catch (RuntimeException e) {
+            Log.warn("Result listener failed: " + e);
+        }
+    }
+
+    private ExcelToCsvExtractor.ExtractionResult write(Parsed item, long parseNanos) {
+        if (item.error() != null) {
+            if (merge != null && appendsInWriteStage()) {
+                appendToMerge(item.index(), null);
+            }
+            return new ExcelToCsvExtractor.ExtractionFailure(item.file(), item.error());
+        }
+
+        Path csvPath = null;
+        if (options.writesFileCsvs()) {
+            csvPath = ExcelToCsvExtractor.csvPathFor(item.file(), csvFolder);
+            if (options.paranoidVerify()) {
+                try {
+                    ExcelToCsvExtractor.validateCsv(csvPath, options.encoding());
+                } catch (IOException e) {
+                    if (merge != null && appendsInWriteStage()) {
+                        item.fragment().discard();
+                        appendToMerge(item.index(), null);
+                    }
+                    return new ExcelToCsvExtractor.ExtractionFailure(item.file(), e.getMessage());
+                }
+            }
+        }
+
+        if (merge != null && appendsInWriteStage()) {
+            appendToMerge(item.index(), item.fragment());
+        }
+
+        // Values are on disk: without retained values the result only gets a handle that re-reads the CSV
+        List<String> values;
+        if (item.values() != null) {
+            values = item.values();
+        } else if (csvPath != null) {
+            values = new CsvValues(csvPath, options.encoding(), options.delimiter());
+        } else {
+            values = List.of();
+        }
+        var written = item.written();
+        var stats = new ExcelToCsvExtractor.FileStats(written.csvBytes(), written.checksum(), parseNanos / 1_000_000);
+        return new ExcelToCsvExtractor.ExtractionSuccess(item.file(), csvPath, written.rowCount(), values, stats);
+    }
+
+    /**
+     * Hands a finished fragment (or, for a failed file, null) to the merged CSV.
+     * After the first failed append the merge is abandoned and later fragments are discarded.
+     * Called from the parse threads in completion order, otherwise (see appendsInWriteStage) from the write thread.
+     */
+    private void appendToMerge(int index, MergedCsvWriter.Fragment fragment) {
+        if (mergeError.get() != null) {
+            if (fragment != null) {
+                fragment.discard();
+            }
+            return;
+        }
+        try {
+            if (fragment != null) {
+                merge.add(index, fragment);
+            } else {
+                merge.skip(index);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            if (mergeError.compareAndSet(null, e.getMessage()) && !merge.appendsOnCompletion()) {
+                merge.abandon();
+            }
+        }
+    }
+
+    /**
+     * Whether fragments go to the merge from the write stage: in source file order, and whenever
+     * --paranoid-verify re-reads the per-file CSV the fragment was copied from, so a file failing it is not merged.
+     */
+    private boolean appendsInWriteStage() {
+        return !merge.appendsOnCompletion() || options.writesFileCsvs() && options.paranoidVerify();
+    }
+
+    private void finishMerge() {
+        try {
+            merge.close();
+            var mergedPath = merge.path();
+            if (mergeError.get() == null && mergedPath != null) {
+                if (options.paranoidVerify()) {
+                    ExcelToCsvExtractor.validateCsv(mergedPath, options.encoding());
+                }
+                Log.info("Created merged CSV: " + mergedPath.getFileName() + " (" + merge.rowsWritten() + " values)");
+            }
+        } catch (IOException | UncheckedIOException e) {
+            mergeError.compareAndSet(null, e.getMessage());
+        }
+        if (mergeError.get() != null) {
+            Log.error("Failed to write merged CSV: " + mergeError.get());
+        }
+    }
+
+    /**
+     * Stage workers run until they receive an end marker, so waits are retried rather than abandoned.
+     */
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item, StageStats consumer) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                if (consumer != null) {
+                    consumer.queuePeak.accumulateAndGet(queue.size(), Math::max);
+                }
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Per-stage counters.
+     */
+    private static final class StageStats {
+        private final String name;
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicInteger queuePeak = new AtomicInteger();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void record(long startNanos) {
+            files.incrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "%-8s %d files, %d ms busy".formatted(name, files.get(), busyNanos.get() / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Reusable extraction engine for one set of options, for hosts that extract repeatedly (the GUI, a service).
+ * Owns the pool of {@link ExtractionContext}s (output buffers, encoders, escapers, pseudonymizer caches
+ * and SAX readers) and the compiled {@link ColumnMatcher}s, which are kept across runs instead of being
+ * rebuilt for every call. Instances are thread-safe; concurrent runs take separate contexts from the pool.
+ * <pre>
+ * var extractor = new Extractor(ExtractionOptions.builder().mergeOutput(true).delimiter(CsvDelimiter.COMMA).build());
+ * var results = extractor.extract(folder, "email");
+ * </pre>
+ */
+public final class Extractor {
+
+    // Column names seen by a long-lived host are few; the cache is cleared rather than grown past this
+    private static final int MATCHER_CACHE_SIZE = 64;
+
+    private final ExcelToCsvExtractor.ExtractionOptions options;
+    private final ExtractionContext.Pool contexts;
+    private final Map<String, ColumnMatcher> matchers = new ConcurrentHashMap<>();
+
+    public Extractor(ExcelToCsvExtractor.ExtractionOptions options) {
+        this.options = Objects.requireNonNull(options);
+        this.contexts = new ExtractionContext.Pool(options);
+    }
+
+    public ExcelToCsvExtractor.ExtractionOptions options() {
+        return options;
+    }
+
+    /**
+     * Extracts the column from all Excel files in the folder; see {@link ExcelToCsvExtractor#processExcelFiles}.
+     */
+    public List<ExcelToCsvExtractor.ExtractionResult> extract(Path folder, String columnName) {
+        return extract(folder, columnName, _ -> {
+        });
+    }
+
+    /**
+     * Extracts the column from all Excel files in the folder, passing each result to the listener as its file completes.
+     */
+    public List<ExcelToCsvExtractor.ExtractionResult> extract(Path folder, String columnName, Consumer<? super ExcelToCsvExtractor.ExtractionResult> listener) {
+        var excelFiles = ExcelToCsvExtractor.findExcelFiles(folder);
+
+        if (excelFiles.isEmpty()) {
+            Log.info("No Excel files found in " + folder);
+            return List.of();
+        }
+
+        try {
+            // Create CSV output folder
+            var csvFolder = folder.resolve(ExcelToCsvExtractor.CSV_FOLDER);
+            Files.createDirectories(csvFolder);
+
+            var pipeline = new ExtractionPipeline(matcher(columnName), csvFolder, options, contexts);
+            var results = pipeline.run(excelFiles, listener);
+            Log.info(pipeline.stageSummary().stripTrailing());
+
+            return Arrays.stream(results)
+                .filter(Objects::nonNull)
+                .toList();
+
+        } catch (Exception e) {
+            Log.error("Error processing files: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Publishes the column values of all Excel files in the folder; see {@link ExcelToCsvExtractor#publishRows}.
+     */
+    public Flow.Publisher<ExcelToCsvExtractor.ExtractedRow> publishRows(Path folder, String columnName) {
+        return new RowPublisher(folder, matcher(columnName), contexts);
+    }
+
+    ColumnMatcher matcher(String columnName) {
+        var matcher = matchers.get(columnName);
+        if (matcher == null) {
+            if (matchers.size() >= MATCHER_CACHE_SIZE) {
+                matchers.clear();
+            }
+            matcher = matchers.computeIfAbsent(columnName, ColumnMatcher::new);
+        }
+        return matcher;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Orders the file queue according to a {@link ExcelToCsvExtractor.SchedulePolicy}
+ * and groups tiny files into batches that run as a single task.
+ * Only the execution order changes; results keep the folder listing order.
+ */
+final class FileScheduler {
+
+    // Files below this size are batched together
+    static final long TINY_FILE_BYTES = 64 * 1024;
+    static final int MAX_BATCH_FILES = 32;
+
+    private FileScheduler() {
+    }
+
+    /**
+     * Plans the tasks for a run. Each task is an array of indices into files;
+     * consecutive tiny files in the chosen order share one task. history is only used by
+     * the HISTORY policy and may be null for the others.
+     */
+    static List<int[]> plan(List<Path> files, long[] sizes, ExcelToCsvExtractor.SchedulePolicy policy, TimingHistory history) {
+        var order = new Integer[files.size()];
+        Arrays.setAll(order, i -> i);
+
+        Comparator<Integer> comparator = switch (policy) {
+            case FILE_ORDER -> null;
+            case LARGEST_FIRST -> Comparator.comparingLong((Integer i) -> sizes[i]).reversed();
+            case SMALLEST_FIRST -> Comparator.comparingLong((Integer i) -> sizes[i]);
+            case HISTORY -> {
+                var predicted = new double[files.size()];
+                for (int i = 0; i < predicted.length; i++) {
+                    predicted[i] = history.predictMillis(files.get(i), sizes[i]);
+                }
+                yield Comparator.comparingDouble((Integer i) -> predicted[i]).reversed();
+            }
+        };
+        if (comparator != null) {
+            Arrays.sort(order, comparator);
+        }
+
+        var tasks = new ArrayList<int[]>();
+        var batch = new ArrayList<Integer>();
+        for (int index : order) {
+            if (sizes[index] < TINY_FILE_BYTES) {
+                batch.add(index);
+                if (batch.size() == MAX_BATCH_FILES) {
+                    tasks.add(toArray(batch));
+                    batch.clear();
+                }
+            } else {
+                if (!batch.isEmpty()) {
+                    tasks.add(toArray(batch));
+                    batch.clear();
+                }
+                tasks.add(new int[]{index});
+            }
+        }
+        if (!batch.isEmpty()) {
+            tasks.add(toArray(batch));
+        }
+        return tasks;
+    }
+
+    static long[] sizesOf(List<Path> files) {
+        var sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            try {
+                sizes[i] = Files.size(files.get(i));
+            } catch (IOException e) {
+                sizes[i] = 0;
+            }
+        }
+        return sizes;
+    }
+
+    private static int[] toArray(List<Integer> indices) {
+        return indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Parse durations of previous runs, stored per file name in the logs folder.
+     * Each entry keeps the file size it was measured at, so predictions scale when a file grows.
+     */
+    static final class TimingHistory {
+
+        private static final String HISTORY_FILE = "timings.properties";
+
+        private final Path path;
+        private final Properties entries = new Properties();
+        // Fallback for files without history: average measured cost per byte
+        private double millisPerByte;
+
+        private TimingHistory(Path path) {
+            this.path = path;
+        }
+
+        static TimingHistory load(Path logsFolder) {
+            var history = new TimingHistory(logsFolder.resolve(HISTORY_FILE));
+            if (Files.isRegularFile(history.path)) {
+                try (var reader = Files.newBufferedReader(history.path)) {
+                    history.entries.load(reader);
+                } catch (IOException e) {
+                    Log.warn("Failed to read timing history: " + e.getMessage());
+                }
+            }
+            history.millisPerByte = history.averageMillisPerByte();
+            return history;
+        }
+
+        double predictMillis(Path file, long size) {
+            var entry = entries.getProperty(file.getFileName().toString());
+            if (entry != null) {
+                var parts = entry.split(",");
+                try {
+                    long recordedSize = Long.parseLong(parts[0]);
+                    double recordedMillis = Double.parseDouble(parts[1]);
+                    return recordedSize > 0 ? recordedMillis * size / recordedSize : recordedMillis;
+                } catch (RuntimeException e) {
+                    // Malformed entry: fall through to the size-based estimate
+                }
+            }
+            return size * millisPerByte;
+        }
+
+        void record(Path file, long size, long nanos) {
+            entries.setProperty(file.getFileName().toString(), size + "," + nanos / 1_000_000.0);
+        }
+
+        void save() {
+            try {
+                Files.createDirectories(path.getParent());
+                try (var writer = Files.newBufferedWriter(path)) {
+                    entries.store(writer, "Parse durations per file: size,millis");
+                }
+            } catch (IOException e) {
+                Log.warn("Failed to write timing history: " + e.getMessage());
+            }
+        }
+
+        private double averageMillisPerByte() {
+            double totalMillis = 0;
+            double totalBytes = 0;
+            for (var value : entries.values()) {
+                var parts = value.toString().split(",");
+                try {
+                    totalBytes += Long.parseLong(parts[0]);
+                    totalMillis += Double.parseDouble(parts[1]);
+                } catch (RuntimeException e) {
+                    // Skip malformed entries
+                }
+            }
+            // Without history any positive constant keeps the order largest-first
+            return totalBytes > 0 && totalMillis > 0 ? totalMillis / totalBytes : 1.0;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Set of non-negative ints with open addressing and linear probing, so large index sets are not boxed.
+ * Each key has a slot in [0, capacity()); slots stay stable until the next add, which lets
+ * callers keep values for the keys in a parallel array once the set is complete.
+ */
+final class IntHashSet {
+
+    private static final int EMPTY = 0;
+
+    // key + 1, so that 0 marks an empty slot
+    private int[] slots;
+    private int size;
+    private int max = -1;
+
+    IntHashSet() {
+        slots = new int[16];
+    }
+
+    /**
+     * Adds the key; returns false if it was already present.
+     */
+    boolean add(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int stored = slots[i];
+            if (stored == EMPTY) {
+                slots[i] = key + 1;
+                size++;
+                max = Math.max(max, key);
+                return true;
+            }
+            if (stored == key + 1) {
+                return false;
+            }
+        }
+    }
+
+    boolean contains(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * The slot holding the key, or -1 if the key is not in the set.
+     */
+    int slotOf(int key) {
+        if (key < 0) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int stored = slots[i];
+            if (stored == EMPTY) {
+                return -1;
+            }
+            if (stored == key + 1) {
+                return i;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The largest key, or -1 for an empty set.
+     */
+    int max() {
+        return max;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    private void grow() {
+        var old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length - 1;
+        for (int stored : old) {
+            if (stored != EMPTY) {
+                int i = hash(stored - 1) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = stored;
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        // Fibonacci hashing spreads consecutive indexes over the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
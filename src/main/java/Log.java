@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous, leveled log for extraction runs, shared by the CLI and the GUI.
+ * Threads publish events into a bounded lock-free ring buffer (many producers, one consumer) and
+ * return at once; a single drain thread takes everything pending and hands it to the consumer as one batch,
+ * so the console or the GUI's text area is written once per batch instead of once per line from every thread.
+ * The default consumer prints INFO and DEBUG to System.out and WARN and ERROR to System.err;
+ * the GUI installs its own. When the ring is full, publishers wait for the drain thread instead of dropping events.
+ * A consumer that throws loses its batch but not the drain thread; should the drain thread die anyway,
+ * publishers print to the console directly and flush stops waiting.
+ * <p>
+ * Events below the level are discarded before they are queued: WARN gives a quiet mode for batch runs.
+ * Call {@link #flush()} before writing to the console directly; it is also called at JVM shutdown.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    public record Event(Level level, String message) {}
+
+    // Power of two, so a sequence maps to its slot with a mask
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_BATCH = 1024;
+
+    // Slot i is free for the producer claiming sequence s when sequences[i] == s,
+    // and holds the event of sequence s for the consumer when sequences[i] == s + 1
+    private static final Event[] slots = new Event[CAPACITY];
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    // Next sequence to consume; only written by the drain thread
+    private static volatile long head;
+    // Sequences below this have been passed to the consumer
+    private static volatile long delivered;
+    private static volatile boolean drainWaiting;
+
+    private static volatile Level level = Level.INFO;
+    private static volatile Consumer<List<Event>> consumer = Log::printToConsole;
+
+    private static final Thread drainThread;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+        drainThread = Thread.ofPlatform().name("log-drain").daemon().start(Log::drain);
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static boolean isEnabled(Level eventLevel) {
+        return eventLevel.compareTo(level) >= 0;
+    }
+
+    public static void setLevel(Level minimum) {
+        level = Objects.requireNonNull(minimum);
+    }
+
+    /**
+     * Replaces the consumer of event batches; null restores console output.
+     * The consumer is called on the drain thread, one batch at a time.
+     */
+    public static void setConsumer(Consumer<List<Event>> eventConsumer) {
+        flush();
+        consumer = eventConsumer != null ? eventConsumer : Log::printToConsole;
+    }
+
+    public static void log(Level eventLevel, String message) {
+        if (!isEnabled(eventLevel)) {
+            return;
+        }
+        var event = new Event(eventLevel, message);
+        while (true) {
+            long sequence = tail.get();
+            int slot = (int) (sequence & MASK);
+            long available = sequences.get(slot);
+            if (available == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    slots[slot] = event;
+                    // Publishes the slot write to the drain thread
+                    sequences.set(slot, sequence + 1);
+                    if (drainWaiting) {
+                        LockSupport.unpark(drainThread);
+                    }
+                    return;
+                }
+            } else if (available < sequence) {
+                // Full: the drain thread has not consumed this slot's previous event yet
+                if (!drainThread.isAlive()) {
+                    printToConsole(List.of(event));
+                    return;
+                }
+                LockSupport.unpark(drainThread);
+                LockSupport.parkNanos(10_000);
+            }
+            // Otherwise another producer claimed the sequence first; retry with the new tail
+        }
+    }
+
+    /**
+     * Waits until every event published before the call has been passed to the consumer,
+     * or the drain thread has died.
+     */
+    public static void flush() {
+        if (Thread.currentThread() == drainThread) {
+            return;
+        }
+        long target = tail.get();
+        while (delivered < target && drainThread.isAlive()) {
+            LockSupport.unpark(drainThread);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static void drain() {
+        var batch = new ArrayList<Event>(MAX_BATCH);
+        while (true) {
+            long next = head;
+            while (batch.size() < MAX_BATCH) {
+                int slot = (int) (next & MASK);
+                if (sequences.get(slot) != next + 1) {
+                    break;
+                }
+                batch.add(slots[slot]);
+                slots[slot] = null;
+                // Frees the slot for the producer one lap ahead
+                sequences.set(slot, next + CAPACITY);
+                next++;
+            }
+            head = next;
+
+            if (batch.isEmpty()) {
+                drainWaiting = true;
+                // Re-check after announcing the wait, so a concurrent publish is not missed
+                if (sequences.get((int) (next & MASK)) != next + 1) {
+                    LockSupport.park();
+                }
+                drainWaiting = false;
+                continue;
+            }
+
+            try {
+                consumer.accept(batch);
+            } catch (Throwable e) {
+                // Publishers and flush depend on the drain thread, so it outlives any consumer failure
+                System.err.println("Log consumer failed: " + e);
+            }
+            batch.clear();
+            delivered = next;
+        }
+    }
+
+    /**
+     * Prints a batch with one call per run of events going to the same stream.
+     */
+    private static void printToConsole(List<Event> batch) {
+        var text = new StringBuilder();
+        boolean toErr = false;
+        for (var event : batch) {
+            boolean err = event.level().compareTo(Level.WARN) >= 0;
+            if (err != toErr && !text.isEmpty()) {
+                (toErr ? System.err : System.out).print(text);
+                text.setLength(0);
+            }
+            toErr = err;
+            text.append(event.message()).append(System.lineSeparator());
+        }
+        if (!text.isEmpty()) {
+            (toErr ? System.err : System.out).print(text);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Shared strings table kept off the heap, for workbooks whose table has millions of entries.
+ * sharedStrings.xml is streamed once into a temp file of UTF-8 bytes, with a long[] of entry offsets;
+ * the file is then memory-mapped and each lookup decodes its entry on demand. The heap holds only
+ * the offsets, so GC pressure does not grow with the size of the table.
+ * Entries are decoded like POI's ReadOnlySharedStringsTable: phonetic runs are left out.
+ * Lookups may come from several threads; close unmaps and deletes the temp file.
+ */
+final class MappedSharedStrings implements SharedStrings, AutoCloseable {
+
+    private static final String SPREADSHEETML_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Arena arena;
+    private final MemorySegment segment;
+    // Entry i spans [offsets[i], offsets[i + 1])
+    private final long[] offsets;
+    private final int count;
+
+    private MappedSharedStrings(Path file, Arena arena, MemorySegment segment, long[] offsets, int count) {
+        this.file = file;
+        this.arena = arena;
+        this.segment = segment;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /**
+     * Streams the package's shared strings table into a temp file and maps it.
+     */
+    static MappedSharedStrings load(OPCPackage pkg, XMLReader xmlReader) throws IOException, SAXException {
+        var file = Files.createTempFile("excel-to-csv-sst-", ".bin");
+        try {
+            var writer = new Writer();
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                writer.channel = channel;
+                var parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+                if (!parts.isEmpty()) {
+                    try (var in = parts.getFirst().getInputStream()) {
+                        xmlReader.setContentHandler(writer);
+                        xmlReader.parse(new InputSource(in));
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                }
+                writer.flush();
+
+                var arena = Arena.ofShared();
+                try {
+                    var segment = writer.position > 0
+                        ? channel.map(FileChannel.MapMode.READ_ONLY, 0, writer.position, arena)
+                        : MemorySegment.NULL;
+                    writer.offsets[writer.count] = writer.position;
+                    return new MappedSharedStrings(file, arena, segment, writer.offsets, writer.count);
+                } catch (IOException | RuntimeException e) {
+                    arena.close();
+                    throw e;
+                }
+            }
+        } catch (IOException | SAXException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        if (idx < 0 || idx >= count) {
+            throw new IndexOutOfBoundsException("Shared string " + idx + " of " + count);
+        }
+        long start = offsets[idx];
+        var bytes = new byte[(int) (offsets[idx + 1] - start)];
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, start, bytes, 0, bytes.length);
+        return new XSSFRichTextString(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return count;
+    }
+
+    /**
+     * Unmaps the table and deletes its temp file.
+     */
+    @Override
+    public void close() throws IOException {
+        arena.close();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Encodes the text of every &lt;si&gt; entry to the temp file as it is parsed and records its offset.
+     */
+    private static final class Writer extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder();
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private FileChannel channel;
+        private long[] offsets = new long[1024];
+        private int count;
+        private long position;
+        private boolean textOpen;
+        private boolean inPhonetic;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "si" -> text.setLength(0);
+                case "t" -> textOpen = true;
+                case "rPh" -> inPhonetic = true;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "si" -> append();
+                case "t" -> textOpen = false;
+                case "rPh" -> inPhonetic = false;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (textOpen && !inPhonetic) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void append() {
+            // One spare slot for the end offset of the last entry
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = position + buffer.position();
+            var chars = CharBuffer.wrap(text);
+            encoder.reset();
+            try {
+                while (encoder.encode(chars, buffer, true).isOverflow()) {
+                    flush();
+                }
+                while (encoder.flush(buffer).isOverflow()) {
+                    flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes the buffered bytes and advances the position past them.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streaming writer for the merged CSV.
+ * Each file's rows are encoded into a {@link Fragment} while the file is parsed; the fragment stays
+ * in memory up to a small limit and spills to a temp file beyond it. Finished fragments are appended
+ * to the merged file as soon as their file completes:
+ * <ul>
+ *   <li>COMPLETION: in the order files finish, nothing is held back. The parse threads append
+ *       their own fragments concurrently (see {@link #append}).</li>
+ *   <li>SOURCE_FILE: sorted by source file name. Only fragments that finish out of order are held,
+ *       and held fragments are spilled to temp files once their heap or their number in memory exceeds a limit.</li>
+ * </ul>
+ * A fragment on disk only has a file channel open while it is written or copied, so held fragments,
+ * however many there are, keep no file descriptors open.
+ * Peak memory is therefore bounded by the fragment limits, not by the number of rows.
+ * When the per-file CSVs are kept as well, each fragment is the already written CSV
+ * (see {@link #fileFragment}) and the merged file is concatenated from them without re-encoding.
+ * <p>
+ * Appends never take a lock: each fragment reserves its byte range with an atomic offset counter
+ * and is written there with positional FileChannel writes, so fragments are written in parallel
+ * and every file's rows stay contiguous. add and skip (SOURCE_FILE order) are called from the
+ * pipeline's single write thread.
+ */
+final class MergedCsvWriter implements AutoCloseable {
+
+    // In-memory bytes per fragment before it spills to a temp file
+    private static final int FRAGMENT_MEMORY_LIMIT = 4 * 1024 * 1024;
+    // Heap of out-of-order fragments before they are spilled
+    private static final long HELD_MEMORY_LIMIT = 64L * 1024 * 1024;
+    // Out-of-order fragments kept in memory before they are spilled, however small
+    private static final int HELD_IN_MEMORY_LIMIT = 1024;
+
+    private final Path path;
+    private final Path spillFolder;
+    private final ExcelToCsvExtractor.ExtractionOptions options;
+    // Merge position of each file (index into the file list) in SOURCE_FILE order
+    private final int[] positions;
+
+    private final TreeMap<Integer, Fragment> held = new TreeMap<>();
+    private final BitSet skipped = new BitSet();
+    private long heldBytes;
+    private int heldInMemory;
+    private int next;
+
+    private final FileChannel channel;
+    // End of the reserved part of the merged file; the BOM is written up front
+    private final AtomicLong offset;
+    private final LongAdder rowsWritten = new LongAdder();
+    private final AtomicInteger fragmentsWritten = new AtomicInteger();
+
+    MergedCsvWriter(Path path, Path spillFolder, List<Path> files, ExcelToCsvExtractor.ExtractionOptions options) throws IOException {
+        this.path = path;
+        this.spillFolder = spillFolder;
+        this.options = options;
+        this.positions = sourceFilePositions(files);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        long bomLength = 0;
+        var encoding = options.encoding();
+        if (encoding.hasBom()) {
+            bomLength = writeFully(channel, ByteBuffer.wrap(encoding.getBom()), 0);
+        }
+        this.offset = new AtomicLong(bomLength);
+    }
+
+    private static int[] sourceFilePositions(List<Path> files) {
+        var order = new Integer[files.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing((Integer i) -> files.get(i).getFileName().toString(), String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(i -> files.get(i).getFileName().toString()));
+        var positions = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            positions[order[position]] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Creates the fragment a parse thread writes one file's rows into, encoded with the thread's context.
+     */
+    Fragment newFragment(ExtractionContext context) throws IOException {
+        var buffer = new SpillBuffer(spillFolder);
+        return new Fragment(buffer, CsvRowWriter.fragment(buffer, context), 0);
+    }
+
+    /**
+     * Wraps a per-file CSV that was already written, so it can be copied into the merged file
+     * with the kernel copy path. The per-file BOM is skipped; the merged file has its own.
+     * The CSV itself is left in place and only opened when it is copied.
+     */
+    Fragment fileFragment(Path csvFile, long rowsWritten) {
+        var encoding = options.encoding();
+        long bomLength = encoding.hasBom() ? encoding.getBom().length : 0;
+        return new Fragment(SpillBuffer.ofFile(csvFile, bomLength), null, rowsWritten);
+    }
+
+    /**
+     * Whether parse threads append their fragments themselves as soon as they finish (COMPLETION order).
+     */
+    boolean appendsOnCompletion() {
+        return options.mergeOrder() == ExcelToCsvExtractor.MergeOrder.COMPLETION;
+    }
+
+    /**
+     * Appends a finished fragment, or holds it until all files before it in source order are done.
+     */
+    void add(int fileIndex, Fragment fragment) throws IOException {
+        if (options.mergeOrder() == ExcelToCsvExtractor.MergeOrder.COMPLETION) {
+            append(fragment);
+            return;
+        }
+
+        held.put(positions[fileIndex], fragment);
+        hold(fragment, 1);
+        drain();
+        spillHeld();
+    }
+
+    /**
+     * Marks a file that produced no fragment (failed files), so later files are not held back by it.
+     */
+    void skip(int fileIndex) throws IOException {
+        if (options.mergeOrder() == ExcelToCsvExtractor.MergeOrder.SOURCE_FILE) {
+            skipped.set(positions[fileIndex]);
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            if (skipped.get(next)) {
+                next++;
+            } else if (held.containsKey(next)) {
+                var fragment = held.remove(next);
+                hold(fragment, -1);
+                append(fragment);
+                next++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a fragment in (+1) or out of (-1) the held memory.
+     */
+    private void hold(Fragment fragment, int sign) {
+        long bytes = fragment.buffer.memoryBytes();
+        heldBytes += sign * bytes;
+        if (bytes > 0) {
+            heldInMemory += sign;
+        }
+    }
+
+    /**
+     * Spills the largest held fragments until the held memory and the number of fragments in memory
+     * are below their limits.
+     */
+    private void spillHeld() throws IOException {
+        while (heldBytes > HELD_MEMORY_LIMIT || heldInMemory > HELD_IN_MEMORY_LIMIT) {
+            Fragment largest = null;
+            for (var fragment : held.values()) {
+                if (largest == null || fragment.buffer.memoryBytes() > largest.buffer.memoryBytes()) {
+                    largest = fragment;
+                }
+            }
+            hold(largest, -1);
+            largest.buffer.spill();
+        }
+    }
+
+    /**
+     * Reserves a byte range at the end of the merged file and writes the fragment into it.
+     * Safe to call from any number of threads at once: the only shared state is the atomic offset.
+     */
+    void append(Fragment fragment) throws IOException {
+        try {
+            long length = fragment.buffer.length();
+            long position = offset.getAndAdd(length);
+            fragment.buffer.writeAt(channel, position);
+            rowsWritten.add(fragment.rowsWritten());
+            fragmentsWritten.incrementAndGet();
+        } finally {
+            fragment.discard();
+        }
+    }
+
+    /**
+     * Merged file, or null when no file produced a fragment (the empty file is removed on close).
+     */
+    Path path() {
+        return fragmentsWritten.get() > 0 ? path : null;
+    }
+
+    long rowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * Appends any fragments still held (in source order) and closes the merged file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!held.isEmpty()) {
+                append(held.pollFirstEntry().getValue());
+            }
+        } finally {
+            abandon();
+            channel.close();
+            if (fragmentsWritten.get() == 0) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes the merged file without writing the held fragments; used when the run fails.
+     */
+    void discard() {
+        abandon();
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Log.warn("Failed to delete incomplete merged CSV " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards held fragments without writing them, e.g. after a failed append.
+     */
+    void abandon() {
+        held.values().forEach(Fragment::discard);
+        held.clear();
+        heldBytes = 0;
+        heldInMemory = 0;
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Positional write of the whole buffer; does not move the channel's position. Returns the bytes written.
+     */
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * One file's encoded rows. Written by a parse thread, then appended by it or handed to the write thread.
+     */
+    static final class Fragment implements RowSink {
+        private final SpillBuffer buffer;
+        // Null for fragments wrapping an existing CSV
+        private final CsvRowWriter rows;
+        private final long fileRows;
+
+        private Fragment(SpillBuffer buffer, CsvRowWriter rows, long fileRows) {
+            this.buffer = buffer;
+            this.rows = rows;
+            this.fileRows = fileRows;
+        }
+
+        @Override
+        public void accept(String value) {
+            rows.accept(value);
+        }
+
+        /**
+         * Flushes the encoder; the fragment is complete afterwards.
+         */
+        void finish() throws IOException {
+            if (rows != null) {
+                rows.close();
+            }
+        }
+
+        long rowsWritten() {
+            return rows != null ? rows.rowsWritten() : fileRows;
+        }
+
+        long bytesWritten() {
+            return rows != null ? rows.bytesWritten() : 0;
+        }
+
+        long checksum() {
+            return rows != null ? rows.checksum() : 0;
+        }
+
+        void discard() {
+            buffer.delete();
+        }
+    }
+
+    /**
+     * Byte sink that keeps data in a growable array up to the fragment limit and continues in a temp file.
+     * Can also wrap an existing file (from a byte offset), which is read but never deleted.
+     * The file's channel is open only while the fragment is written and while it is copied.
+     */
+    private static final class SpillBuffer implements WritableByteChannel {
+        private final Path folder;
+        private byte[] data = new byte[8 * 1024];
+        private int size;
+        // Set once the data is on disk
+        private Path spillFile;
+        // Open only while writing
+        private FileChannel spill;
+        // Offset of the data in the spill file, and whether the file is ours to delete
+        private long start;
+        private boolean owned = true;
+        private boolean open = true;
+
+        SpillBuffer(Path folder) {
+            this.folder = folder;
+        }
+
+        static SpillBuffer ofFile(Path file, long start) {
+            var buffer = new SpillBuffer(file.getParent());
+            buffer.data = null;
+            buffer.spillFile = file;
+            buffer.start = start;
+            buffer.owned = false;
+            buffer.open = false;
+            return buffer;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            if (spillFile == null && size + length > FRAGMENT_MEMORY_LIMIT) {
+                spill();
+            }
+            if (spill != null) {
+                writeFully(spill, src);
+                return length;
+            }
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+            }
+            src.get(data, size, length);
+            size += length;
+            return length;
+        }
+
+        /**
+         * Heap held by the data: the whole array, not only the bytes in use.
+         */
+        long memoryBytes() {
+            return spillFile == null && data != null ? data.length : 0;
+        }
+
+        long length() throws IOException {
+            return spillFile == null ? size : Math.max(0, Files.size(spillFile) - start);
+        }
+
+        void spill() throws IOException {
+            if (spillFile != null) {
+                return;
+            }
+            spillFile = Files.createTempFile(folder, ".merge-", ".tmp");
+            spill = FileChannel.open(spillFile, StandardOpenOption.WRITE);
+            writeFully(spill, ByteBuffer.wrap(data, 0, size));
+            data = null;
+            size = 0;
+            if (!open) {
+                closeSpill();
+            }
+        }
+
+        /**
+         * Copies the data to the target at the given position; spilled data goes through the kernel copy path.
+         */
+        void writeAt(FileChannel target, long position) throws IOException {
+            if (spillFile == null) {
+                writeFully(target, ByteBuffer.wrap(data, 0, size), position);
+                return;
+            }
+            try (var source = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+                long length = Math.max(0, source.size() - start);
+                long copied = 0;
+                source.position(start);
+                while (copied < length) {
+                    long transferred = target.transferFrom(source, position + copied, length - copied);
+                    if (transferred <= 0) {
+                        throw new IOException("Failed to copy merge temp file " + spillFile);
+                    }
+                    copied += transferred;
+                }
+            }
+        }
+
+        void delete() {
+            data = null;
+            size = 0;
+            try {
+                closeSpill();
+                if (owned && spillFile != null) {
+                    Files.deleteIfExists(spillFile);
+                }
+            } catch (IOException e) {
+                Log.warn("Failed to delete merge temp file " + spillFile + ": " + e.getMessage());
+            }
+            spillFile = null;
+        }
+
+        private void closeSpill() throws IOException {
+            if (spill != null) {
+                var channel = spill;
+                spill = null;
+                channel.close();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // End of writing; the data is kept until it is transferred or deleted
+            open = false;
+            closeSpill();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses one large sheet document in row ranges on the fork/join pool, so a single giant file
+ * uses every core instead of one. The document (an inflated .xlsx sheet or a SpreadsheetML file)
+ * is memory-mapped and cut just before row start tags into chunks of about 1 to 4 MB.
+ * <p>
+ * Every chunk is parsed as a document of its own: the prolog up to the first row, the chunk's rows,
+ * and end tags for the elements still open at the first row. The header row is parsed first on the calling thread;
+ * the chunks then run in parallel, and their values are passed to the sink in row order as each chunk completes,
+ * with a bounded number of chunks in flight. A chunk must end exactly at a row boundary, which its parser checks,
+ * so a cut that fell inside a comment or CDATA section is detected. The sheet is then read sequentially
+ * instead, skipping the values already passed on; the output is the same as without splitting.
+ * Chunks still running at that point are told to stop and waited for before the mapping is closed.
+ */
+final class ParallelSheetReader {
+
+    // Smaller chunks cost more in scheduling and repeated prologs than they gain
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    // The values of the chunks in flight are held on the heap until they are passed on, so chunks stay this small
+    // however large the sheet is
+    private static final long MAX_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelSheetReader() {
+    }
+
+    /**
+     * Parses one chunk document. With columnIndex -1 the document holds only the header row and
+     * the index of the target column is returned; otherwise it holds data rows, whose values go to the sink.
+     * Throws if the document does not end at a row boundary.
+     */
+    @FunctionalInterface
+    interface ChunkParser {
+        int parse(InputStream document, int columnIndex, RowSink values) throws Exception;
+    }
+
+    /**
+     * Reads the whole sheet on the calling thread, for documents that cannot be split.
+     */
+    @FunctionalInterface
+    interface SequentialReader {
+        void read(RowSink values) throws IOException;
+    }
+
+    /**
+     * Reads the target column of the sheet document in parallel chunks, or sequentially when it is
+     * too small to split, has fewer than two rows, or has a prolog the splitter does not understand.
+     *
+     * @param rowName local name of the row element: "row" for .xlsx, "Row" for SpreadsheetML
+     */
+    static void readColumn(Path document, String rowName, ChunkParser parser, SequentialReader sequential, RowSink values) throws IOException {
+        long size = Files.size(document);
+        int threads = ForkJoinPool.commonPool().getParallelism();
+        if (size < 2 * MIN_CHUNK_BYTES) {
+            sequential.read(values);
+            return;
+        }
+
+        long emitted;
+        Exception failure;
+        try (var channel = FileChannel.open(document); var arena = Arena.ofShared()) {
+            var segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            var layout = Layout.of(segment, rowName, threads);
+            if (layout == null) {
+                sequential.read(values);
+                return;
+            }
+
+            int columnIndex;
+            try {
+                columnIndex = parser.parse(layout.header(), -1, _ -> {
+                });
+            } catch (Exception e) {
+                // A missing column or a malformed header is reported by the sequential reader, which stops at the header too
+                columnIndex = -1;
+            }
+            if (columnIndex < 0) {
+                sequential.read(values);
+                return;
+            }
+
+            var counter = new long[1];
+            failure = parseChunks(layout, parser, columnIndex, threads, value -> {
+                values.accept(value);
+                counter[0]++;
+            });
+            emitted = counter[0];
+        }
+
+        if (failure != null) {
+            Log.debug(document.getFileName() + ": parallel parse failed (" + failure.getMessage() + "), reading sequentially");
+            long[] skip = {emitted};
+            sequential.read(value -> {
+                if (skip[0] > 0) {
+                    skip[0]--;
+                } else {
+                    values.accept(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the chunks on the common pool and passes their values on in order.
+     * Returns the failure of the first chunk that did not parse, or null.
+     */
+    private static Exception parseChunks(Layout layout, ChunkParser parser, int columnIndex, int threads, RowSink values) throws IOException {
+        var pool = ForkJoinPool.commonPool();
+        var pending = new ArrayDeque<ForkJoinTask<List<String>>>();
+        // Set when the remaining chunks are not needed; chunks check it before they start and at every value
+        var aborted = new AtomicBoolean();
+        int window = threads * 2;
+        int next = 0;
+        try {
+            while (next < layout.chunks() || !pending.isEmpty()) {
+                while (next < layout.chunks() && pending.size() < window) {
+                    int chunk = next++;
+                    pending.add(pool.submit(() -> {
+                        var rows = new ArrayList<String>();
+                        if (!aborted.get()) {
+                            parser.parse(layout.chunk(chunk), columnIndex, value -> {
+                                if (aborted.get()) {
+                                    throw new CancellationException();
+                                }
+                                rows.add(value);
+                            });
+                        }
+                        return rows;
+                    }));
+                }
+                List<String> rows;
+                try {
+                    rows = pending.peek().get();
+                } catch (ExecutionException e) {
+                    return e.getCause() instanceof Exception cause ? cause : e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while parsing chunks");
+                }
+                pending.poll();
+                rows.forEach(values::accept);
+            }
+            return null;
+        } finally {
+            // Chunks still running read the mapping, which is closed after this returns. Cancelling would not
+            // wait for a running task, so they are stopped through the flag and joined
+            aborted.set(true);
+            for (var task : pending) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Where the document is cut: the first row (the header), and the starts of the data chunks,
+     * the first of which is the second row. end is the suffix of end tags closing the prolog.
+     */
+    private record Layout(MemorySegment segment, long firstRow, long[] starts, byte[] end) {
+
+        /**
+         * Finds the rows and cut points, or returns null if the document cannot be split.
+         * Small documents get a few chunks per thread; large ones get as many chunks as MAX_CHUNK_BYTES requires.
+         */
+        static Layout of(MemorySegment segment, String rowName, int threads) {
+            long size = segment.byteSize();
+            var open = new ArrayList<String>();
+            long firstRow = -1;
+            String rowTag = null;
+            long i = 0;
+            while (i < size && firstRow < 0) {
+                if (byteAt(segment, i) != '<') {
+                    i++;
+                    continue;
+                }
+                int b = byteAt(segment, i + 1);
+                if (b == '?' || b == '!') {
+                    String close;
+                    if (b == '?') {
+                        close = "?>";
+                    } else if (startsWith(segment, i, "<!--")) {
+                        close = "-->";
+                    } else if (startsWith(segment, i, "<![CDATA[")) {
+                        close = "]]>";
+                    } else {
+                        return null; // DOCTYPE
+                    }
+                    long closeAt = indexOf(segment, close, i + 2);
+                    if (closeAt < 0) {
+                        return null;
+                    }
+                    i = closeAt + close.length();
+                } else {
+                    long nameEnd = i + 1;
+                    while (nameEnd < size && !endsName(byteAt(segment, nameEnd))) {
+                        nameEnd++;
+                    }
+                    long tagEnd = tagEnd(segment, nameEnd);
+                    if (tagEnd < 0) {
+                        return null;
+                    }
+                    if (b == '/') {
+                        if (open.isEmpty()) {
+                            return null;
+                        }
+                        open.removeLast();
+                    } else {
+                        var name = string(segment, i + 1, nameEnd);
+                        if (name.equals(rowName) || name.endsWith(":" + rowName)) {
+                            firstRow = i;
+                            rowTag = "<" + name;
+                        } else if (byteAt(segment, tagEnd - 1) != '/') {
+                            open.add(name);
+                        }
+                    }
+                    i = tagEnd + 1;
+                }
+            }
+            if (firstRow < 0) {
+                return null;
+            }
+
+            long secondRow = findTag(segment, rowTag, firstRow + 1);
+            if (secondRow < 0) {
+                return null;
+            }
+            long data = size - secondRow;
+            if (data < 2 * MIN_CHUNK_BYTES) {
+                return null;
+            }
+            long chunkBytes = Math.clamp(data / ((long) threads * CHUNKS_PER_THREAD), MIN_CHUNK_BYTES, MAX_CHUNK_BYTES);
+            int chunks = (int) ((data + chunkBytes - 1) / chunkBytes);
+            var starts = new long[chunks];
+            int count = 0;
+            starts[count++] = secondRow;
+            for (int k = 1; k < chunks; k++) {
+                long start = findTag(segment, rowTag, Math.max(secondRow + k * chunkBytes, starts[count - 1] + 1));
+                if (start < 0) {
+                    break;
+                }
+                starts[count++] = start;
+            }
+
+            var end = new StringBuilder();
+            for (var name : open.reversed()) {
+                end.append("</").append(name).append('>');
+            }
+            return new Layout(segment, firstRow, Arrays.copyOf(starts, count), end.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        int chunks() {
+            return starts.length;
+        }
+
+        /**
+         * The prolog, the header row and the closing end tags.
+         */
+        InputStream header() {
+            return document(firstRow, starts[0], true);
+        }
+
+        /**
+         * The prolog, the rows of the chunk and the closing end tags; the last chunk runs to the end of the file.
+         */
+        InputStream chunk(int index) {
+            boolean last = index == starts.length - 1;
+            return document(starts[index], last ? segment.byteSize() : starts[index + 1], !last);
+        }
+
+        private InputStream document(long start, long end, boolean close) {
+            return new SequenceInputStream(Collections.enumeration(List.of(
+                new SegmentInputStream(segment, 0, firstRow),
+                new SegmentInputStream(segment, start, end),
+                new ByteArrayInputStream(close ? this.end : new byte[0]))));
+        }
+    }
+
+    /**
+     * Position of the next start tag with the given "&lt;name" at or after from, or -1.
+     */
+    private static long findTag(MemorySegment segment, String tag, long from) {
+        long size = segment.byteSize();
+        for (long i = indexOf(segment, tag, from); i >= 0; i = indexOf(segment, tag, i + 1)) {
+            long after = i + tag.length();
+            if (after < size && endsName(byteAt(segment, after))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position of the '&gt;' ending a tag, skipping quoted attribute values, or -1.
+     */
+    private static long tagEnd(MemorySegment segment, long from) {
+        int quote = 0;
+        for (long i = from; i < segment.byteSize(); i++) {
+            int b = byteAt(segment, i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long indexOf(MemorySegment segment, String text, long from) {
+        long last = segment.byteSize() - text.length();
+        int first = text.charAt(0);
+        for (long i = Math.max(from, 0); i <= last; i++) {
+            if (byteAt(segment, i) == first && startsWith(segment, i, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(MemorySegment segment, long at, String text) {
+        if (at + text.length() > segment.byteSize()) {
+            return false;
+        }
+        for (int k = 0; k < text.length(); k++) {
+            if (byteAt(segment, at + k) != text.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsName(int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '>' || b == '/';
+    }
+
+    private static int byteAt(MemorySegment segment, long index) {
+        return index < segment.byteSize() ? segment.get(ValueLayout.JAVA_BYTE, index) & 0xFF : -1;
+    }
+
+    private static String string(MemorySegment segment, long start, long end) {
+        return new String(segment.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a range of the mapped document.
+     */
+    private static final class SegmentInputStream extends InputStream {
+        private final MemorySegment segment;
+        private long position;
+        private final long end;
+
+        SegmentInputStream(MemorySegment segment, long start, long end) {
+            this.segment = segment;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            return position < end ? segment.get(ValueLayout.JAVA_BYTE, position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - position);
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
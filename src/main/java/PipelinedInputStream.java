@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads its source on a thread of its own, so that inflating a zip entry
+ * overlaps with parsing it on the calling thread.
+ * The inflater thread fills a ring of reusable buffers and hands each full one over through a bounded queue;
+ * the reader drains it and returns it to the ring. When all buffers are full the inflater waits,
+ * so at most the ring is held in memory however large the entry is.
+ * <p>
+ * Failures of the source, Errors included, are rethrown by the read that reaches them. Closing the stream stops the inflater
+ * and waits for it to close the source, so the caller can close the package afterwards.
+ */
+final class PipelinedInputStream extends InputStream {
+
+    // Marks the end of the source in the filled queue
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final Thread inflater;
+    private ByteBuffer current;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    PipelinedInputStream(InputStream source, int buffers, int bufferSize) {
+        this.free = new ArrayBlockingQueue<>(buffers);
+        // One more slot than buffers, so END can always be queued
+        this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) {
+            free.add(ByteBuffer.allocate(bufferSize));
+        }
+        this.inflater = Thread.ofPlatform().name("sheet-inflater").daemon().start(() -> fill(source));
+    }
+
+    private void fill(InputStream source) {
+        try (source) {
+            while (!closed) {
+                var buffer = free.take();
+                if (closed) {
+                    break;
+                }
+                int n = source.readNBytes(buffer.array(), 0, buffer.capacity());
+                if (n == 0) {
+                    break;
+                }
+                buffer.clear().limit(n);
+                filled.add(buffer);
+                if (n < buffer.capacity()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Inflater interrupted");
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            // Always reached, so the reader never waits for a dead inflater
+            filled.add(END);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = next();
+        return buffer != null ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        var buffer = next();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    /**
+     * The buffer to read from, taking the next full one once the current one is drained; null at the end.
+     */
+    private ByteBuffer next() throws IOException {
+        if (current != null && current.hasRemaining()) {
+            return current;
+        }
+        if (current == END) {
+            return null;
+        }
+        if (current != null) {
+            free.add(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for inflated data");
+        }
+        if (current == END) {
+            rethrowFailure();
+            return null;
+        }
+        return current;
+    }
+
+    private void rethrowFailure() throws IOException {
+        switch (failure) {
+            case null -> {
+            }
+            case IOException e -> throw e;
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new IOException("Inflater failed", failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Hands the buffers back so an inflater waiting for one sees the close
+        ByteBuffer buffer;
+        while ((buffer = filled.poll()) != null) {
+            if (buffer != END) {
+                free.offer(buffer);
+            }
+        }
+        if (current != null && current != END) {
+            free.offer(current);
+        }
+        current = END;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                inflater.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keyed, deterministic, format-preserving pseudonymization for the scramble option.
+ * Each value is hashed with SipHash-2-4 under a secret 128-bit key; the hash seeds a
+ * replacement for every character of the same class (upper case, lower case, digit),
+ * while separators such as '@', '.' and spaces are kept, so e-mail addresses still look like e-mail addresses.
+ * The same value always maps to the same token, across files and runs, as long as the key is the same.
+ * Without the key the mapping cannot be recomputed or reversed.
+ * <p>
+ * The key is read from the EXCEL_TO_CSV_SCRAMBLE_KEY environment variable (32 hex digits),
+ * otherwise from ~/.excel-to-csv/scramble.key, which is generated on first use (owner-only where POSIX permissions apply).
+ * Instances are not thread-safe; each CSV writer owns one, with its own LRU cache.
+ */
+final class Pseudonymizer {
+
+    static final String KEY_ENVIRONMENT_VARIABLE = "EXCEL_TO_CSV_SCRAMBLE_KEY";
+    private static final Path KEY_FILE = Path.of(System.getProperty("user.home"), ".excel-to-csv", "scramble.key");
+    private static final int KEY_BYTES = 16;
+    // A key file that another process has just created is re-read until its key is written
+    private static final int KEY_READ_ATTEMPTS = 50;
+    private static final long KEY_READ_RETRY_MILLIS = 20;
+    private static final int CACHE_SIZE = 4096;
+
+    private static volatile long[] sharedKey;
+
+    private final long k0;
+    private final long k1;
+    private final Map<String, String> cache = new LinkedHashMap<>(CACHE_SIZE * 4 / 3 + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private char[] scratch = new char[64];
+    // SipHash state, kept in fields so hashing does not allocate
+    private long v0;
+    private long v1;
+    private long v2;
+    private long v3;
+
+    Pseudonymizer(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    /**
+     * Creates a pseudonymizer with the configured key, loading or generating it once per process.
+     */
+    static Pseudonymizer withConfiguredKey() throws IOException {
+        var key = sharedKey;
+        if (key == null) {
+            synchronized (Pseudonymizer.class) {
+                key = sharedKey;
+                if (key == null) {
+                    key = loadKey();
+                    sharedKey = key;
+                }
+            }
+        }
+        return new Pseudonymizer(key[0], key[1]);
+    }
+
+    /**
+     * Returns the token for the value; repeated values are served from the cache.
+     */
+    String pseudonymize(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        var token = cache.get(value);
+        if (token == null) {
+            token = tokenize(value);
+            cache.put(value, token);
+        }
+        return token;
+    }
+
+    private String tokenize(String value) {
+        int length = value.length();
+        if (scratch.length < length) {
+            scratch = new char[Math.max(length, scratch.length * 2)];
+        }
+
+        long seed = sipHash(value);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            long random = mix(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+            if (Character.isDigit(c)) {
+                c = (char) ('0' + Long.remainderUnsigned(random, 10));
+            } else if (Character.isUpperCase(c)) {
+                c = (char) ('A' + Long.remainderUnsigned(random, 26));
+            } else if (Character.isLetter(c)) {
+                c = (char) ('a' + Long.remainderUnsigned(random, 26));
+            }
+            scratch[i] = c;
+        }
+        return new String(scratch, 0, length);
+    }
+
+    /**
+     * SipHash-2-4 over the UTF-16 code units of the value (little-endian), without allocating.
+     */
+    private long sipHash(String value) {
+        v0 = 0x736f6d6570736575L ^ k0;
+        v1 = 0x646f72616e646f6dL ^ k1;
+        v2 = 0x6c7967656e657261L ^ k0;
+        v3 = 0x7465646279746573L ^ k1;
+
+        int length = value.length();
+        int full = length & ~3;
+        for (int i = 0; i < full; i += 4) {
+            compress(value.charAt(i)
+                | (long) value.charAt(i + 1) << 16
+                | (long) value.charAt(i + 2) << 32
+                | (long) value.charAt(i + 3) << 48);
+        }
+
+        // Last block: remaining code units and the message length in bytes
+        long last = (long) (length * 2) << 56;
+        for (int i = full; i < length; i++) {
+            last |= (long) value.charAt(i) << ((i - full) * 16);
+        }
+        compress(last);
+
+        v2 ^= 0xff;
+        for (int round = 0; round < 4; round++) {
+            sipRound();
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private void compress(long m) {
+        v3 ^= m;
+        sipRound();
+        sipRound();
+        v0 ^= m;
+    }
+
+    private void sipRound() {
+        v0 += v1;
+        v1 = Long.rotateLeft(v1, 13);
+        v1 ^= v0;
+        v0 = Long.rotateLeft(v0, 32);
+        v2 += v3;
+        v3 = Long.rotateLeft(v3, 16);
+        v3 ^= v2;
+        v0 += v3;
+        v3 = Long.rotateLeft(v3, 21);
+        v3 ^= v0;
+        v2 += v1;
+        v1 = Long.rotateLeft(v1, 17);
+        v1 ^= v2;
+        v2 = Long.rotateLeft(v2, 32);
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads the keyed seed into an independent value per position.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long[] loadKey() throws IOException {
+        var configured = System.getenv(KEY_ENVIRONMENT_VARIABLE);
+        if (configured != null && !configured.isBlank()) {
+            return parseKey(configured.trim(), KEY_ENVIRONMENT_VARIABLE);
+        }
+
+        if (!Files.isRegularFile(KEY_FILE)) {
+            try {
+                createKeyFile();
+                Log.info("Generated scramble key: " + KEY_FILE);
+            } catch (FileAlreadyExistsException e) {
+                // Another process generated it first; its key is used
+            }
+        }
+        return parseKey(readKeyFile(), KEY_FILE.toString());
+    }
+
+    /**
+     * Writes a new random key. Where POSIX permissions are supported, the file (and a folder created for it)
+     * is accessible by the owner only. CREATE_NEW makes processes starting at the same time agree on one key.
+     */
+    private static void createKeyFile() throws IOException {
+        var bytes = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        var content = HexFormat.of().formatHex(bytes) + System.lineSeparator();
+
+        boolean posix = KEY_FILE.getFileSystem().supportedFileAttributeViews().contains("posix");
+        Files.createDirectories(KEY_FILE.getParent(), posix
+            ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))}
+            : new FileAttribute<?>[0]);
+        var attributes = posix
+            ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+            : new FileAttribute<?>[0];
+        try (var channel = Files.newByteChannel(KEY_FILE, Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), attributes)) {
+            var buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads the key file, waiting briefly while a process that has just created it has not written the key yet.
+     */
+    private static String readKeyFile() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            var hex = Files.readString(KEY_FILE).trim();
+            if (!hex.isEmpty() || attempt == KEY_READ_ATTEMPTS) {
+                return hex;
+            }
+            try {
+                Thread.sleep(KEY_READ_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + KEY_FILE);
+            }
+        }
+    }
+
+    private static long[] parseKey(String hex, String source) throws IOException {
+        if (hex.length() != KEY_BYTES * 2) {
+            throw new IOException("Invalid scramble key in " + source + ": expected " + KEY_BYTES * 2 + " hex digits");
+        }
+        try {
+            return new long[]{
+                HexFormat.fromHexDigitsToLong(hex, 0, 16),
+                HexFormat.fromHexDigitsToLong(hex, 16, 32)
+            };
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid scramble key in " + source + ": " + e.getMessage());
+        }
+    }
+}
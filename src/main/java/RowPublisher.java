@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the target column's values of every Excel file in a folder, without writing CSVs.
+ * Each subscription parses the files one after the other on its own thread, in folder listing order,
+ * with one {@link ExtractionContext} from the extractor's pool.
+ * Readers push values as they parse, so the parse thread blocks in the sink while the subscriber
+ * has no outstanding demand: a slow subscriber pauses parsing instead of values piling up on the heap.
+ * <p>
+ * Rows carry the same values as the per-file CSVs: blank values are skipped (their row index is still counted)
+ * and scrambled output yields the pseudonyms. A file that cannot be extracted is logged
+ * and skipped; onError is only signalled when the folder cannot be read or for an invalid request.
+ * <p>
+ * Signals never overlap: an invalid request is signalled from request right away, unless onSubscribe or onNext
+ * is running, in which case it follows as soon as that returns. Nothing is signalled after cancel.
+ */
+final class RowPublisher implements Flow.Publisher<ExcelToCsvExtractor.ExtractedRow> {
+
+    private final Path folder;
+    private final ColumnMatcher column;
+    private final ExtractionContext.Pool contexts;
+
+    RowPublisher(Path folder, ColumnMatcher column, ExtractionContext.Pool contexts) {
+        this.folder = folder;
+        this.column = column;
+        this.contexts = contexts;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ExcelToCsvExtractor.ExtractedRow> subscriber) {
+        Objects.requireNonNull(subscriber);
+        var subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.signalled();
+        Thread.ofPlatform().name("row-publisher").daemon().start(subscription::run);
+    }
+
+    private final class RowSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ExcelToCsvExtractor.ExtractedRow> subscriber;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        // Guarded by lock
+        private long demand;
+        private boolean cancelled;
+        private boolean terminated;
+        // onSubscribe or onNext is running; starts with onSubscribe
+        private boolean signalling = true;
+        // Invalid request made while signalling, sent when the signal returns
+        private Throwable pendingError;
+
+        RowSubscription(Flow.Subscriber<? super ExcelToCsvExtractor.ExtractedRow> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            Throwable error = null;
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    // Reactive Streams rule 3.9: signal onError, and the subscription ends
+                    cancelled = true;
+                    var invalid = new IllegalArgumentException("Requested " + n + " rows; the request must be positive");
+                    if (signalling) {
+                        pendingError = invalid;
+                    } else {
+                        terminated = true;
+                        error = invalid;
+                    }
+                } else {
+                    // Saturates at Long.MAX_VALUE, which means unbounded demand
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                pendingError = null;
+                demanded.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Called when onSubscribe or onNext returns: sends an invalid request made meanwhile.
+         */
+        void signalled() {
+            Throwable error;
+            lock.lock();
+            try {
+                signalling = false;
+                error = pendingError;
+                pendingError = null;
+                if (error != null) {
+                    terminated = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            }
+        }
+
+        /**
+         * Sends onComplete, or onError with the given error, unless the subscription has already ended.
+         */
+        private void terminate(Throwable error) {
+            lock.lock();
+            try {
+                if (cancelled || terminated) {
+                    return;
+                }
+                terminated = true;
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        void run() {
+            if (!isActive()) {
+                return;
+            }
+            if (!Files.isDirectory(folder)) {
+                terminate(new NotDirectoryException(folder.toString()));
+                return;
+            }
+            var context = contexts.acquire();
+            try {
+                var pseudonymizer = context.pseudonymizer();
+                for (var file : ExcelToCsvExtractor.findExcelFiles(folder)) {
+                    if (!publish(file, context, pseudonymizer)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                terminate(e);
+                return;
+            } finally {
+                contexts.release(context);
+            }
+            terminate(null);
+        }
+
+        /**
+         * Publishes the rows of one file. Returns false once the subscription has ended.
+         */
+        private boolean publish(Path file, ExtractionContext context, Pseudonymizer pseudonymizer) {
+            var rowIndex = new long[1];
+            RowSink sink = value -> {
+                long index = rowIndex[0]++;
+                if (CsvRowWriter.isWritten(value)) {
+                    awaitDemand();
+                    var published = pseudonymizer != null ? pseudonymizer.pseudonymize(value) : value;
+                    try {
+                        subscriber.onNext(new ExcelToCsvExtractor.ExtractedRow(file, index, published));
+                    } catch (RuntimeException e) {
+                        // A subscriber must not throw; treat it as a cancellation (Reactive Streams rule 2.13)
+                        cancel();
+                        Log.error("Row subscriber failed: " + e);
+                        throw new CancellationException();
+                    } finally {
+                        signalled();
+                    }
+                }
+            };
+            try {
+                var xml = ExcelToCsvExtractor.isXmlSpreadsheet(file);
+                ExcelToCsvExtractor.readColumn(file, column, xml, context, sink);
+            } catch (Exception e) {
+                // Readers may wrap the cancellation thrown from the sink, so the flag decides
+                if (!isActive()) {
+                    return false;
+                }
+                Log.error("Error - " + file.getFileName() + ": " + e.getMessage());
+            }
+            return isActive();
+        }
+
+        /**
+         * Blocks the parse thread until the subscriber has demand for another row, then marks onNext as running.
+         */
+        private void awaitDemand() {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled) {
+                    demanded.await();
+                }
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                signalling = true;
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isActive() {
+            lock.lock();
+            try {
+                return !cancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
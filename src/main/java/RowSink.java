@@ -0,0 +1,20 @@
+/**
+ * Receives the target column's values one data row at a time, in row order.
+ * Readers push into a sink as they parse, so values never have to be collected first.
+ * Sinks that write to disk report I/O errors as UncheckedIOException.
+ */
+@FunctionalInterface
+interface RowSink {
+
+    void accept(String value);
+
+    /**
+     * Returns a sink that passes each value to this sink and then to the other one.
+     */
+    default RowSink andThen(RowSink other) {
+        return value -> {
+            accept(value);
+            other.accept(value);
+        };
+    }
+}
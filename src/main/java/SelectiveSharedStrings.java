@@ -0,0 +1,264 @@
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Shared strings table that holds only the entries a column extraction needs.
+ * The indexes come from a scan of the sheet XML ({@link #scanSheet}); sharedStrings.xml is then streamed
+ * and every other entry is skipped, stopping after the largest wanted index. Memory is proportional
+ * to the distinct values of the column, not to the size of the workbook's table.
+ * Entries are decoded like POI's ReadOnlySharedStringsTable: phonetic runs are left out.
+ * getCount and getUniqueCount only count the entries read up to the last wanted one.
+ */
+final class SelectiveSharedStrings implements SharedStrings {
+
+    private static final String SPREADSHEETML_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final RichTextString NOT_LOADED = new XSSFRichTextString("");
+
+    private final IntHashSet indexes;
+    // Parallel to the slots of indexes
+    private final String[] strings;
+    private int uniqueCount;
+
+    private SelectiveSharedStrings(IntHashSet indexes) {
+        this.indexes = indexes;
+        this.strings = new String[indexes.capacity()];
+    }
+
+    /**
+     * Streams the package's shared strings table and keeps the entries with the given indexes.
+     */
+    static SelectiveSharedStrings load(OPCPackage pkg, IntHashSet indexes, XMLReader xmlReader) throws IOException, SAXException {
+        var table = new SelectiveSharedStrings(indexes);
+        var parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty() || indexes.size() == 0) {
+            return table;
+        }
+        try (var in = parts.getFirst().getInputStream()) {
+            xmlReader.setContentHandler(table.new Filter());
+            xmlReader.parse(new InputSource(in));
+        } catch (Stop e) {
+            // All wanted entries were read
+        }
+        return table;
+    }
+
+    /**
+     * Adds the shared string indexes referenced by one column of the sheet to the set.
+     * With headerOnly, the indexes of every cell in the first row are added and scanning stops after it;
+     * otherwise those of the given column in all rows after the first.
+     */
+    static void scanSheet(InputStream sheet, int column, boolean headerOnly, IntHashSet indexes, XMLReader xmlReader) throws IOException, SAXException {
+        xmlReader.setContentHandler(new SheetScanner(column, headerOnly, indexes));
+        try {
+            xmlReader.parse(new InputSource(sheet));
+        } catch (Stop e) {
+            // First row done
+        }
+    }
+
+    /**
+     * The sheet handler resolves the strings of every cell, but only the header row and the target column
+     * are used; the entries of other columns were not loaded and resolve to an empty string.
+     */
+    @Override
+    public RichTextString getItemAt(int idx) {
+        int slot = indexes.slotOf(idx);
+        if (slot < 0 || strings[slot] == null) {
+            return NOT_LOADED;
+        }
+        return new XSSFRichTextString(strings[slot]);
+    }
+
+    @Override
+    public int getCount() {
+        return uniqueCount;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Ends a scan early; thrown from the handlers and caught by the scan methods.
+     */
+    private static final class Stop extends SAXException {
+        Stop() {
+            super(null, null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Reads the &lt;si&gt; entries of sharedStrings.xml, keeping the text of the wanted ones.
+     */
+    private final class Filter extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder();
+        private int index = -1;
+        private boolean wanted;
+        private boolean textOpen;
+        private boolean inPhonetic;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "si" -> {
+                    index++;
+                    if (index > indexes.max()) {
+                        throw new Stop();
+                    }
+                    wanted = indexes.contains(index);
+                    text.setLength(0);
+                }
+                case "t" -> textOpen = true;
+                case "rPh" -> inPhonetic = true;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "si" -> {
+                    uniqueCount = index + 1;
+                    if (wanted) {
+                        strings[indexes.slotOf(index)] = text.toString();
+                    }
+                }
+                case "t" -> textOpen = false;
+                case "rPh" -> inPhonetic = false;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (wanted && textOpen && !inPhonetic) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+
+    /**
+     * Collects the shared string indexes (cells with t="s") of the target column, or of the whole first row.
+     * Columns are taken from the cell reference letters; cells without a reference follow the previous cell.
+     */
+    private static final class SheetScanner extends DefaultHandler {
+        private final int column;
+        private final boolean headerOnly;
+        private final IntHashSet indexes;
+        private final StringBuilder value = new StringBuilder();
+        private int rows;
+        private int cellColumn;
+        private boolean sharedCell;
+        private boolean valueOpen;
+
+        SheetScanner(int column, boolean headerOnly, IntHashSet indexes) {
+            this.column = column;
+            this.headerOnly = headerOnly;
+            this.indexes = indexes;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "row" -> {
+                    rows++;
+                    cellColumn = -1;
+                }
+                case "c" -> {
+                    var reference = attributes.getValue("r");
+                    cellColumn = reference != null ? columnOf(reference) : cellColumn + 1;
+                    boolean inScope = headerOnly ? rows == 1 : rows > 1 && cellColumn == column;
+                    sharedCell = inScope && "s".equals(attributes.getValue("t"));
+                }
+                case "v" -> {
+                    if (sharedCell) {
+                        valueOpen = true;
+                        value.setLength(0);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!SPREADSHEETML_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "v" -> {
+                    if (valueOpen) {
+                        valueOpen = false;
+                        try {
+                            indexes.add(Integer.parseInt(value.toString().trim()));
+                        } catch (NumberFormatException e) {
+                            // Not an index; the sheet parse reports the cell as POI does
+                        }
+                    }
+                }
+                case "c" -> sharedCell = false;
+                case "row" -> {
+                    if (headerOnly) {
+                        throw new Stop();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (valueOpen) {
+                value.append(ch, start, length);
+            }
+        }
+
+        /**
+         * Zero-based column of a cell reference such as "AB12", from its letters.
+         */
+        private static int columnOf(String reference) {
+            int result = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    result = result * 26 + (c - 'A' + 1);
+                } else if (c >= 'a' && c <= 'z') {
+                    result = result * 26 + (c - 'a' + 1);
+                } else if (c != '$') {
+                    break;
+                }
+            }
+            return result - 1;
+        }
+    }
+}
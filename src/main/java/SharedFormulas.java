@@ -0,0 +1,253 @@
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParseException;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.SharedFormula;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Shared and array formulas of one .xlsx sheet, for the streaming readers, which see the cells one at a time.
+ * A filled-down formula is stored once, in the first cell of its range ({@code <f t="shared" ref="B2:B9" si="0">A2*2</f>});
+ * the other cells only name it ({@code <f t="shared" si="0"/>}). Like XSSFCell.getCellFormula, every cell of the range
+ * gets the formula with its relative references moved by the cell's offset from the first cell of the range.
+ * An array formula is stored in the first cell of its range as well, and every cell of the range has it unchanged.
+ * <p>
+ * As in XSSFCell, a shared formula is parsed once, moved with POI's SharedFormula and rendered for each cell,
+ * so the text is exactly that of the usermodel reader. The parser runs against an empty stand-in workbook;
+ * a formula it cannot parse without the real one (a defined name, a table) has its references moved in the text instead.
+ */
+final class SharedFormulas {
+
+    // Moved references wrap around the sheet, like POI's SharedFormula does for .xlsx
+    private static final int COLUMN_MASK = 0x3FFF;
+    private static final int ROW_MASK = 0xFFFFF;
+    private static final int MAX_COLUMNS = COLUMN_MASK + 1;
+    private static final int MAX_ROWS = ROW_MASK + 1;
+
+    private static final Pattern CELL = Pattern.compile("(\\$?)([A-Za-z]{1,3})(\\$?)([0-9]{1,7})");
+    private static final Pattern COLUMN = Pattern.compile("(\\$?)([A-Za-z]{1,3})");
+    private static final Pattern ROW = Pattern.compile("(\\$?)([0-9]{1,7})");
+
+    // tokens is null for a formula the stand-in workbook cannot parse
+    private record Shared(String formula, Ptg[] tokens, int firstRow, int firstColumn) {}
+
+    private record Array(String formula, CellRangeAddress range) {}
+
+    private final Map<Integer, Shared> shared = new HashMap<>();
+    private final List<Array> arrays = new ArrayList<>();
+    // Created for the first shared formula
+    private XSSFEvaluationWorkbook workbook;
+
+    /**
+     * Records the formula of the first cell of a shared formula range such as "B2:B9".
+     */
+    void defineShared(int index, String range, String formula) {
+        var address = CellRangeAddress.valueOf(range);
+        shared.put(index, new Shared(formula, parse(formula, address.getFirstRow()), address.getFirstRow(), address.getFirstColumn()));
+    }
+
+    /**
+     * Records the formula of the first cell of an array formula range.
+     */
+    void defineArray(String range, String formula) {
+        arrays.add(new Array(formula, CellRangeAddress.valueOf(range)));
+    }
+
+    /**
+     * The formula of a cell using the shared formula with the given index, or null if it has not been defined yet.
+     */
+    String sharedFormula(int index, int row, int column) {
+        var formula = shared.get(index);
+        if (formula == null) {
+            return null;
+        }
+        int rows = row - formula.firstRow();
+        int columns = column - formula.firstColumn();
+        if (formula.tokens() == null) {
+            return move(formula.formula(), rows, columns);
+        }
+        var moved = new SharedFormula(SpreadsheetVersion.EXCEL2007).convertSharedFormulas(formula.tokens(), rows, columns);
+        return FormulaRenderer.toFormulaString(workbook, moved);
+    }
+
+    /**
+     * The array formula whose range holds the cell, or null.
+     */
+    String arrayFormula(int row, int column) {
+        for (var array : arrays) {
+            if (array.range().isInRange(row, column)) {
+                return array.formula();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Last row covered by an array formula, or -1 without array formulas.
+     */
+    int arrayLastRow() {
+        int last = -1;
+        for (var array : arrays) {
+            last = Math.max(last, array.range().getLastRow());
+        }
+        return last;
+    }
+
+    private Ptg[] parse(String formula, int row) {
+        if (workbook == null) {
+            var stub = new XSSFWorkbook();
+            stub.createSheet();
+            workbook = XSSFEvaluationWorkbook.create(stub);
+        }
+        try {
+            return FormulaParser.parse(formula, workbook, FormulaType.CELL, 0, row);
+        } catch (FormulaParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Moves the relative references of an A1-style formula by the given number of rows and columns.
+     * String literals, quoted sheet names, bracketed parts, function names and sheet names are left as they are.
+     */
+    static String move(String formula, int rows, int columns) {
+        var out = new StringBuilder(formula.length() + 8);
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            char c = formula.charAt(i);
+            if (c == '"' || c == '\'') {
+                // A doubled quote is part of the text
+                int end = i + 1;
+                while (end < length && (formula.charAt(end) != c || end + 1 < length && formula.charAt(end + 1) == c)) {
+                    end += formula.charAt(end) == c ? 2 : 1;
+                }
+                end = Math.min(end + 1, length);
+                out.append(formula, i, end);
+                i = end;
+            } else if (c == '[') {
+                // Structured reference or external workbook, possibly nested
+                int depth = 0;
+                int end = i;
+                do {
+                    char d = formula.charAt(end++);
+                    depth += d == '[' ? 1 : d == ']' ? -1 : 0;
+                } while (end < length && depth > 0);
+                out.append(formula, i, end);
+                i = end;
+            } else if (isTokenChar(c)) {
+                int end = tokenEnd(formula, i);
+                var token = formula.substring(i, end);
+                char next = end < length ? formula.charAt(end) : 0;
+                if (next == '(' || next == '!' || next == '[') {
+                    // Function, sheet or table name
+                    out.append(token);
+                } else if (next == ':' && end + 1 < length && movePair(token, formula.substring(end + 1, tokenEnd(formula, end + 1)), rows, columns, out)) {
+                    end = tokenEnd(formula, end + 1);
+                } else if (!moveCell(token, rows, columns, out)) {
+                    out.append(token);
+                }
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends a whole-column ("A:C") or whole-row ("2:4") range moved; returns false for anything else.
+     */
+    private static boolean movePair(String first, String second, int rows, int columns, StringBuilder out) {
+        var firstColumn = COLUMN.matcher(first);
+        var secondColumn = COLUMN.matcher(second);
+        if (firstColumn.matches() && secondColumn.matches()) {
+            int from = columnIndex(firstColumn.group(2));
+            int to = columnIndex(secondColumn.group(2));
+            if (from >= MAX_COLUMNS || to >= MAX_COLUMNS) {
+                return false;
+            }
+            appendColumn(out, firstColumn.group(1), from, columns);
+            out.append(':');
+            appendColumn(out, secondColumn.group(1), to, columns);
+            return true;
+        }
+        var firstRow = ROW.matcher(first);
+        var secondRow = ROW.matcher(second);
+        if (firstRow.matches() && secondRow.matches()) {
+            int from = Integer.parseInt(firstRow.group(2));
+            int to = Integer.parseInt(secondRow.group(2));
+            if (from < 1 || from > MAX_ROWS || to < 1 || to > MAX_ROWS) {
+                return false;
+            }
+            appendRow(out, firstRow.group(1), from, rows);
+            out.append(':');
+            appendRow(out, secondRow.group(1), to, rows);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a cell reference such as "A1" or "$B$2" moved; returns false if the token is not one.
+     */
+    private static boolean moveCell(String token, int rows, int columns, StringBuilder out) {
+        var cell = CELL.matcher(token);
+        if (!cell.matches()) {
+            return false;
+        }
+        int column = columnIndex(cell.group(2));
+        int row = Integer.parseInt(cell.group(4));
+        if (column >= MAX_COLUMNS || row < 1 || row > MAX_ROWS) {
+            return false;
+        }
+        appendColumn(out, cell.group(1), column, columns);
+        appendRow(out, cell.group(3), row, rows);
+        return true;
+    }
+
+    private static void appendColumn(StringBuilder out, String absolute, int column, int columns) {
+        out.append(absolute);
+        int moved = absolute.isEmpty() ? column + columns & COLUMN_MASK : column;
+        int start = out.length();
+        for (int n = moved + 1; n > 0; n = (n - 1) / 26) {
+            out.insert(start, (char) ('A' + (n - 1) % 26));
+        }
+    }
+
+    private static void appendRow(StringBuilder out, String absolute, int row, int rows) {
+        out.append(absolute);
+        out.append(absolute.isEmpty() ? (row - 1 + rows & ROW_MASK) + 1 : row);
+    }
+
+    private static int columnIndex(String letters) {
+        int result = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            result = result * 26 + Character.toUpperCase(letters.charAt(i)) - 'A' + 1;
+        }
+        return result - 1;
+    }
+
+    private static int tokenEnd(String formula, int from) {
+        int end = from;
+        while (end < formula.length() && isTokenChar(formula.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$' || c == '\\';
+    }
+}
@@ -0,0 +1,1032 @@
+import org.apache.poi.xssf.model.SharedStrings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Hand-written scanner for the worksheet XML of an .xlsx sheet, used by the SCANNER engine instead of
+ * SAX and XSSFSheetXMLHandler. It works on the inflated bytes of the part and knows only the worksheet
+ * grammar: &lt;sheetData&gt;, &lt;row r&gt;, &lt;c r t&gt; and the &lt;v&gt;, &lt;f&gt; and &lt;is&gt;&lt;t&gt; inside cells.
+ * No strings are built for tags or attributes; cell references become column numbers straight from their bytes,
+ * and cells of data rows outside the target column are skipped to their end tag without being decoded.
+ * Values come out exactly as from the SAX path in XlsxStreamingReader. Formula cells yield their formula text,
+ * with shared formulas expanded by {@link SharedFormulas}; the &lt;f&gt; of skipped cells is only read when it holds
+ * the formula of a shared or array formula range, which cells of the target column may use.
+ * <p>
+ * A prolog the scanner does not handle (a DOCTYPE, an encoding other than UTF-8, the SpreadsheetML namespace
+ * missing or bound to a prefix) raises {@link Unsupported} before any row is read, so the caller can use SAX instead.
+ */
+final class SheetXmlScanner {
+
+    private static final String SPREADSHEETML_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    // Elements the scanner acts on; anything else, including prefixed names, is OTHER
+    private static final int OTHER = 0;
+    private static final int SHEET_DATA = 1;
+    private static final int ROW = 2;
+    private static final int CELL = 3;
+    private static final int VALUE = 4;
+    private static final int FORMULA = 5;
+    private static final int INLINE_STRING = 6;
+    private static final int TEXT = 7;
+
+    // Cell types, from the t attribute
+    private static final int TYPE_NUMBER = 0;
+    private static final int TYPE_SHARED_STRING = 1;
+    private static final int TYPE_INLINE_STRING = 2;
+    private static final int TYPE_STRING_FORMULA = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_ERROR = 5;
+    private static final int TYPE_OTHER = 6;
+
+    // Formula types, from the t attribute of <f>
+    private static final int FORMULA_NORMAL = 0;
+    private static final int FORMULA_SHARED = 1;
+    private static final int FORMULA_ARRAY = 2;
+    private static final int FORMULA_DATA_TABLE = 3;
+
+    // Results of nextAttribute
+    private static final int ATTRIBUTE = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_EMPTY = 2;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    private final SharedStrings strings;
+    private final ColumnMatcher column;
+    private final RowSink values;
+
+    // Current tag or attribute name, and the value of the current attribute (longer values are cut)
+    private final byte[] name = new byte[64];
+    private int nameLength;
+    private final byte[] attribute = new byte[128];
+    private int attributeLength;
+
+    private final Text value = new Text();
+    private final Text formula = new Text();
+    private final SharedFormulas sharedFormulas = new SharedFormulas();
+
+    private boolean headerSeen;
+    private int columnIndex = -1;
+    private int rowNum = -1;
+    private int nextRowNum;
+    private boolean rowOpen;
+    private boolean sheetDataClosed;
+    private String currentValue;
+
+    private int cellColumn;
+    private int cellType;
+    // Formula of the current cell, set at </f>: its own text, or the index of the shared formula it uses
+    private String cellFormula;
+    private int sharedIndex;
+    private boolean cellReported;
+    private boolean valueOpen;
+    private boolean formulaOpen;
+    private boolean inlineOpen;
+
+    // Attributes of the current <f>
+    private int formulaType;
+    private String formulaRange;
+    private int formulaIndex;
+
+    private SheetXmlScanner(InputStream in, byte[] buffer, SharedStrings strings, ColumnMatcher column, RowSink values) {
+        this.in = in;
+        this.buffer = buffer;
+        this.strings = strings;
+        this.column = column;
+        this.values = values;
+    }
+
+    /**
+     * Reads the target column of the sheet and pushes every data row value into the sink,
+     * with the same rules and errors as XlsxStreamingReader's SAX parse.
+     */
+    static void scan(InputStream sheet, byte[] buffer, SharedStrings strings, ColumnMatcher column, RowSink values) throws IOException, Unsupported {
+        var scanner = new SheetXmlScanner(sheet, buffer, strings, column, values);
+        scanner.prolog();
+        scanner.body();
+    }
+
+    /**
+     * Reads a chunk document of {@link ParallelSheetReader}: with columnIndex -1 it holds the header row
+     * and the index of the target column is returned; otherwise its rows are data rows of that column.
+     * Throws if the sheet data does not end after a complete row.
+     */
+    static int scanChunk(InputStream chunk, byte[] buffer, SharedStrings strings, ColumnMatcher column, int columnIndex, RowSink values) throws IOException, Unsupported {
+        var scanner = new SheetXmlScanner(chunk, buffer, strings, column, values);
+        if (columnIndex >= 0) {
+            scanner.headerSeen = true;
+            scanner.columnIndex = columnIndex;
+            // Rows without a reference are data rows wherever the chunk starts
+            scanner.nextRowNum = 1;
+        }
+        scanner.prolog();
+        scanner.body();
+        if (!scanner.sheetDataClosed) {
+            throw malformed("chunk does not end at a row boundary");
+        }
+        // Later chunks could not tell that their cells belong to the range
+        if (scanner.sharedFormulas.arrayLastRow() > scanner.rowNum) {
+            throw new IOException("Array formula continues past the chunk");
+        }
+        return scanner.columnIndex;
+    }
+
+    /**
+     * The sheet uses a construct left to the SAX parser; thrown before any row is reported.
+     */
+    static final class Unsupported extends Exception {
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /**
+     * Reads up to and including the root element's start tag, checking that the scanner can take the rest.
+     */
+    private void prolog() throws IOException, Unsupported {
+        int b = next();
+        if (b == 0xEF) {
+            if (next() != 0xBB || next() != 0xBF) {
+                throw malformed("invalid byte order mark");
+            }
+            b = next();
+        } else if (b == 0xFE || b == 0xFF || b == 0) {
+            throw new Unsupported("UTF-16 encoded sheet");
+        }
+
+        while (true) {
+            while (isWhitespace(b)) {
+                b = next();
+            }
+            if (b != '<') {
+                throw malformed("content before the root element");
+            }
+            b = next();
+            if (b == '?') {
+                checkDeclaration();
+            } else if (b == '!') {
+                if (next() != '-') {
+                    throw new Unsupported("DOCTYPE in sheet");
+                }
+                expect('-');
+                skipComment();
+            } else if (b == 0) {
+                throw new Unsupported("UTF-16 encoded sheet");
+            } else {
+                readName(b);
+                root();
+                return;
+            }
+            b = next();
+        }
+    }
+
+    /**
+     * Reads the XML declaration or a processing instruction before the root; only UTF-8 is accepted.
+     */
+    private void checkDeclaration() throws IOException, Unsupported {
+        var declaration = new StringBuilder();
+        int previous = 0;
+        for (int b = next(); b != '>' || previous != '?'; b = next()) {
+            declaration.append((char) b);
+            previous = b;
+        }
+        var encoding = ENCODING.matcher(declaration);
+        if (declaration.toString().startsWith("xml") && encoding.find()) {
+            var charset = encoding.group(1);
+            if (!charset.equalsIgnoreCase("UTF-8") && !charset.equalsIgnoreCase("UTF8")) {
+                throw new Unsupported(charset + " encoded sheet");
+            }
+        }
+    }
+
+    private void root() throws IOException, Unsupported {
+        if (!nameIs("worksheet")) {
+            throw new Unsupported("root element " + new String(name, 0, Math.min(nameLength, name.length), StandardCharsets.UTF_8));
+        }
+        boolean defaultNamespace = false;
+        while (nextAttribute() == ATTRIBUTE) {
+            if (nameIs("xmlns")) {
+                defaultNamespace = attributeIs(SPREADSHEETML_NS);
+            } else if (nameStartsWith("xmlns:") && attributeIs(SPREADSHEETML_NS)) {
+                throw new Unsupported("SpreadsheetML namespace bound to a prefix");
+            }
+        }
+        if (!defaultNamespace) {
+            throw new Unsupported("SpreadsheetML is not the default namespace");
+        }
+    }
+
+    private void body() throws IOException {
+        while (text(capture())) {
+            int b = next();
+            if (b == '/') {
+                readName(next());
+                int element = element();
+                for (b = next(); b != '>'; b = next()) {
+                    if (!isWhitespace(b)) {
+                        throw malformed("invalid end tag");
+                    }
+                }
+                end(element);
+            } else if (b == '!') {
+                markupDeclaration(capture());
+            } else if (b == '?') {
+                skipProcessingInstruction();
+            } else {
+                readName(b);
+                start(element());
+            }
+        }
+    }
+
+    // Start and end of elements
+
+    private void start(int element) throws IOException {
+        switch (element) {
+            case ROW -> startRow();
+            case CELL -> startCell();
+            case FORMULA -> startFormula();
+            default -> {
+                boolean empty = skipAttributes();
+                switch (element) {
+                    case VALUE -> {
+                        valueOpen = true;
+                        if (!inlineOpen) {
+                            value.clear();
+                        }
+                    }
+                    case TEXT -> valueOpen = inlineOpen;
+                    case INLINE_STRING -> inlineOpen = true;
+                    default -> {
+                    }
+                }
+                if (empty) {
+                    end(element);
+                }
+            }
+        }
+    }
+
+    private void end(int element) throws IOException {
+        switch (element) {
+            case VALUE -> {
+                valueOpen = false;
+                if (!inlineOpen) {
+                    reportCell();
+                }
+            }
+            case TEXT -> {
+                if (inlineOpen) {
+                    valueOpen = false;
+                }
+            }
+            case INLINE_STRING -> {
+                inlineOpen = false;
+                reportCell();
+            }
+            case FORMULA -> {
+                formulaOpen = false;
+                endFormula();
+            }
+            case CELL -> {
+                // Formula cells without a cached value are reported with their formula text
+                if (!cellReported && (cellFormula != null || sharedIndex >= 0)) {
+                    cell(formulaText());
+                }
+            }
+            case ROW -> endRow();
+            case SHEET_DATA -> {
+                if (rowOpen) {
+                    throw malformed("unclosed row");
+                }
+                if (!headerSeen) {
+                    throw new ExcelToCsvExtractor.ExtractionException("No header row found");
+                }
+                sheetDataClosed = true;
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void startRow() throws IOException {
+        int reference = -1;
+        int kind;
+        while ((kind = nextAttribute()) == ATTRIBUTE) {
+            if (nameIs("r")) {
+                reference = attributeInt();
+                if (reference < 0) {
+                    throw malformed("invalid row number");
+                }
+            }
+        }
+        rowNum = reference >= 0 ? reference - 1 : nextRowNum;
+        if (!headerSeen) {
+            if (rowNum != 0) {
+                throw new ExcelToCsvExtractor.ExtractionException("No header row found");
+            }
+            headerSeen = true;
+        }
+        currentValue = null;
+        rowOpen = true;
+        if (kind == TAG_EMPTY) {
+            endRow();
+        }
+    }
+
+    private void endRow() throws IOException {
+        rowOpen = false;
+        if (rowNum == 0) {
+            if (columnIndex < 0) {
+                throw new ExcelToCsvExtractor.ExtractionException("Column '" + column.columnName() + "' not found");
+            }
+        } else {
+            values.accept(currentValue != null ? currentValue : "");
+        }
+        nextRowNum = rowNum + 1;
+    }
+
+    private void startCell() throws IOException {
+        cellColumn = -1;
+        cellType = TYPE_NUMBER;
+        int kind;
+        while ((kind = nextAttribute()) == ATTRIBUTE) {
+            if (nameIs("r")) {
+                cellColumn = attributeColumn();
+            } else if (nameIs("t")) {
+                cellType = attributeCellType();
+            }
+        }
+
+        // Cells without a reference are never used; in the header row, only until the column is found
+        boolean wanted = cellColumn >= 0 && (rowNum == 0 ? columnIndex < 0 : cellColumn == columnIndex);
+        if (!wanted) {
+            if (kind == TAG_OPEN) {
+                skipCell();
+            }
+            return;
+        }
+        value.clear();
+        cellFormula = null;
+        sharedIndex = -1;
+        cellReported = false;
+        if (kind == TAG_EMPTY) {
+            end(CELL);
+        }
+    }
+
+    private void startFormula() throws IOException {
+        int kind = formulaAttributes();
+        formula.clear();
+        formulaOpen = kind == TAG_OPEN;
+        if (kind == TAG_EMPTY) {
+            endFormula();
+        }
+    }
+
+    private int formulaAttributes() throws IOException {
+        formulaType = FORMULA_NORMAL;
+        formulaRange = null;
+        formulaIndex = -1;
+        int kind;
+        while ((kind = nextAttribute()) == ATTRIBUTE) {
+            if (nameIs("t")) {
+                formulaType = attributeIs("shared") ? FORMULA_SHARED
+                    : attributeIs("array") ? FORMULA_ARRAY
+                    : attributeIs("dataTable") ? FORMULA_DATA_TABLE
+                    : FORMULA_NORMAL;
+            } else if (nameIs("ref")) {
+                formulaRange = attributeLength <= attribute.length ? new String(attribute, 0, attributeLength, StandardCharsets.US_ASCII) : null;
+            } else if (nameIs("si")) {
+                formulaIndex = attributeInt();
+            }
+        }
+        return kind;
+    }
+
+    private void endFormula() {
+        switch (formulaType) {
+            case FORMULA_SHARED -> {
+                if (formulaIndex >= 0) {
+                    defineFormula();
+                    sharedIndex = formulaIndex;
+                }
+            }
+            case FORMULA_ARRAY -> {
+                defineFormula();
+                cellFormula = formula.toString();
+            }
+            case FORMULA_DATA_TABLE -> {
+                // Not a formula cell for the usermodel reader, which uses the cached value
+            }
+            default -> cellFormula = formula.toString();
+        }
+    }
+
+    /**
+     * Records the formula of the first cell of a shared or array formula range.
+     */
+    private void defineFormula() {
+        if (formulaRange == null) {
+            return;
+        }
+        if (formulaType == FORMULA_SHARED) {
+            sharedFormulas.defineShared(formulaIndex, formulaRange, formula.toString());
+        } else {
+            sharedFormulas.defineArray(formulaRange, formula.toString());
+        }
+    }
+
+    /**
+     * Reads the &lt;f&gt; of a skipped cell after its name, keeping it if it starts a shared or array formula range.
+     * Stops after the "&lt;/" of its end tag.
+     */
+    private void skippedFormula() throws IOException {
+        int kind = formulaAttributes();
+        boolean starts = formulaRange != null
+            && (formulaType == FORMULA_SHARED && formulaIndex >= 0 || formulaType == FORMULA_ARRAY);
+        if (kind != TAG_OPEN || !starts) {
+            return;
+        }
+        formula.clear();
+        while (true) {
+            if (!text(formula)) {
+                throw malformed("unexpected end of file");
+            }
+            if (next() != '!') {
+                break;
+            }
+            markupDeclaration(formula);
+        }
+        defineFormula();
+    }
+
+    // Cell values
+
+    private void reportCell() throws IOException {
+        var rendered = formulaText();
+        if (rendered == null) {
+            rendered = switch (cellType) {
+                case TYPE_SHARED_STRING -> sharedString();
+                case TYPE_INLINE_STRING, TYPE_STRING_FORMULA, TYPE_OTHER -> value.toString();
+                case TYPE_BOOLEAN -> !value.isEmpty() && value.byteAt(0) == '0' ? "false" : "true";
+                case TYPE_NUMBER -> value.toNumber();
+                default -> "";
+            };
+        }
+        value.clear();
+        cell(rendered);
+    }
+
+    /**
+     * The formula text of the current cell, or null if it is not a formula cell. Like the usermodel reader,
+     * the other cells of an array formula's range have the formula of the range.
+     */
+    private String formulaText() throws IOException {
+        if (sharedIndex >= 0) {
+            var text = sharedFormulas.sharedFormula(sharedIndex, rowNum, cellColumn);
+            if (text == null) {
+                throw new ExcelToCsvExtractor.ExtractionException("Shared formula " + sharedIndex + " is used before it is defined");
+            }
+            return text;
+        }
+        if (cellFormula != null) {
+            return cellFormula;
+        }
+        return sharedFormulas.arrayFormula(rowNum, cellColumn);
+    }
+
+    private void cell(String rendered) {
+        cellReported = true;
+        if (rowNum == 0) {
+            if (columnIndex < 0 && column.matches(rendered)) {
+                columnIndex = cellColumn;
+            }
+        } else if (cellColumn == columnIndex) {
+            currentValue = rendered;
+        }
+    }
+
+    private String sharedString() {
+        if (value.isEmpty()) {
+            return "";
+        }
+        int index = value.toIndex();
+        if (index < 0) {
+            try {
+                index = Integer.parseInt(value.toString());
+            } catch (NumberFormatException e) {
+                return "";
+            }
+        }
+        return strings.getItemAt(index).toString();
+    }
+
+    // Attributes
+
+    /**
+     * Reads the next attribute into name and attribute, or the end of the start tag.
+     */
+    private int nextAttribute() throws IOException {
+        int b = next();
+        while (isWhitespace(b)) {
+            b = next();
+        }
+        if (b == '>') {
+            return TAG_OPEN;
+        }
+        if (b == '/') {
+            expect('>');
+            return TAG_EMPTY;
+        }
+        nameLength = 0;
+        while (b != '=' && !isWhitespace(b)) {
+            appendName(b);
+            b = next();
+        }
+        while (isWhitespace(b)) {
+            b = next();
+        }
+        if (b != '=') {
+            throw malformed("attribute without value");
+        }
+        int quote = next();
+        while (isWhitespace(quote)) {
+            quote = next();
+        }
+        if (quote != '"' && quote != '\'') {
+            throw malformed("attribute value not quoted");
+        }
+        attributeLength = 0;
+        for (b = next(); b != quote; b = next()) {
+            if (attributeLength < attribute.length) {
+                attribute[attributeLength] = (byte) b;
+            }
+            attributeLength++;
+        }
+        return ATTRIBUTE;
+    }
+
+    /**
+     * Skips the attributes of a start tag; returns true for an empty-element tag.
+     */
+    private boolean skipAttributes() throws IOException {
+        int kind;
+        while ((kind = nextAttribute()) == ATTRIBUTE) {
+            // Not needed
+        }
+        return kind == TAG_EMPTY;
+    }
+
+    private boolean attributeIs(String expected) {
+        if (attributeLength != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < attributeLength; i++) {
+            if (attribute[i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The attribute as a non-negative int, or -1 if it is not one.
+     */
+    private int attributeInt() {
+        if (attributeLength == 0 || attributeLength > 9) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < attributeLength; i++) {
+            int digit = attribute[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Zero-based column of a cell reference such as "AB12", from its letters.
+     */
+    private int attributeColumn() {
+        int result = 0;
+        for (int i = 0; i < Math.min(attributeLength, attribute.length); i++) {
+            int c = attribute[i];
+            if (c >= 'A' && c <= 'Z') {
+                result = result * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                result = result * 26 + (c - 'a' + 1);
+            } else if (c != '$') {
+                break;
+            }
+        }
+        return result - 1;
+    }
+
+    private int attributeCellType() {
+        if (attributeIs("s")) {
+            return TYPE_SHARED_STRING;
+        } else if (attributeIs("n")) {
+            return TYPE_NUMBER;
+        } else if (attributeIs("str")) {
+            return TYPE_STRING_FORMULA;
+        } else if (attributeIs("inlineStr")) {
+            return TYPE_INLINE_STRING;
+        } else if (attributeIs("b")) {
+            return TYPE_BOOLEAN;
+        } else if (attributeIs("e")) {
+            return TYPE_ERROR;
+        }
+        return TYPE_OTHER;
+    }
+
+    // Names
+
+    /**
+     * Reads a tag name starting with the given byte; the byte that ends it is left unread.
+     */
+    private void readName(int first) throws IOException {
+        nameLength = 0;
+        int b = first;
+        while (!isWhitespace(b) && b != '>' && b != '/') {
+            appendName(b);
+            b = next();
+        }
+        unread();
+    }
+
+    private void appendName(int b) {
+        if (nameLength < name.length) {
+            name[nameLength] = (byte) b;
+        }
+        nameLength++;
+    }
+
+    private int element() {
+        return switch (nameLength) {
+            case 1 -> switch (name[0]) {
+                case 'c' -> CELL;
+                case 'v' -> VALUE;
+                case 'f' -> FORMULA;
+                case 't' -> TEXT;
+                default -> OTHER;
+            };
+            case 2 -> nameIs("is") ? INLINE_STRING : OTHER;
+            case 3 -> nameIs("row") ? ROW : OTHER;
+            case 9 -> nameIs("sheetData") ? SHEET_DATA : OTHER;
+            default -> OTHER;
+        };
+    }
+
+    private boolean nameIs(String expected) {
+        return nameLength == expected.length() && nameStartsWith(expected);
+    }
+
+    private boolean nameStartsWith(String prefix) {
+        if (nameLength < prefix.length() || prefix.length() > name.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (name[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Character data and markup
+
+    /**
+     * The text of a wanted cell element that is open, or null if character data is skipped.
+     */
+    private Text capture() {
+        return valueOpen ? value : formulaOpen ? formula : null;
+    }
+
+    /**
+     * Reads character data up to and including the next '&lt;', appending it to target unless that is null.
+     * Returns false at the end of the input.
+     */
+    private boolean text(Text target) throws IOException {
+        if (target == null) {
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == '<') {
+                        position = i + 1;
+                        return true;
+                    }
+                }
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+        boolean afterCr = false;
+        for (int b = read(); b >= 0; b = read()) {
+            if (b == '<') {
+                return true;
+            }
+            if (b == '&') {
+                target.appendCodePoint(entity());
+            } else if (b == '\r') {
+                // Line ends are normalized to \n, as by an XML parser
+                target.append('\n');
+            } else if (b != '\n' || !afterCr) {
+                target.append(b);
+            }
+            afterCr = b == '\r';
+        }
+        return false;
+    }
+
+    /**
+     * Reads a comment or CDATA section after "&lt;!"; CDATA content is appended to target unless that is null.
+     */
+    private void markupDeclaration(Text target) throws IOException {
+        int b = next();
+        if (b == '-') {
+            expect('-');
+            skipComment();
+            return;
+        }
+        if (b != '[') {
+            throw malformed("DOCTYPE not allowed here");
+        }
+        for (int i = 0; i < "CDATA[".length(); i++) {
+            expect("CDATA[".charAt(i));
+        }
+        int brackets = 0;
+        boolean afterCr = false;
+        while (true) {
+            b = next();
+            if (b == '>' && brackets >= 2) {
+                brackets -= 2;
+                break;
+            }
+            if (b == ']') {
+                brackets++;
+                continue;
+            }
+            if (target != null) {
+                for (; brackets > 0; brackets--) {
+                    target.append(']');
+                }
+                if (b == '\r') {
+                    target.append('\n');
+                } else if (b != '\n' || !afterCr) {
+                    target.append(b);
+                }
+            }
+            brackets = 0;
+            afterCr = b == '\r';
+        }
+        if (target != null) {
+            for (; brackets > 0; brackets--) {
+                target.append(']');
+            }
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        for (int b = next(); b != '>' || dashes < 2; b = next()) {
+            dashes = b == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipProcessingInstruction() throws IOException {
+        int previous = 0;
+        for (int b = next(); b != '>' || previous != '?'; b = next()) {
+            previous = b;
+        }
+    }
+
+    /**
+     * Skips the content of a cell through its end tag without decoding it.
+     */
+    private void skipCell() throws IOException {
+        while (true) {
+            if (!text(null)) {
+                throw malformed("unexpected end of file");
+            }
+            int b = next();
+            if (b == '!') {
+                markupDeclaration(null);
+            } else if (b == 'f') {
+                readName(b);
+                if (nameIs("f")) {
+                    skippedFormula();
+                }
+            } else if (b == '/' && next() == 'c') {
+                for (b = next(); isWhitespace(b); b = next()) {
+                    // Whitespace before '>'
+                }
+                if (b == '>') {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an entity or character reference after '&amp;' and returns its code point.
+     */
+    private int entity() throws IOException {
+        nameLength = 0;
+        for (int b = next(); b != ';'; b = next()) {
+            if (nameLength == 16) {
+                throw malformed("unterminated entity reference");
+            }
+            appendName(b);
+        }
+        if (nameLength > 1 && name[0] == '#') {
+            boolean hex = name[1] == 'x';
+            int codePoint = 0;
+            for (int i = hex ? 2 : 1; i < nameLength; i++) {
+                int digit = Character.digit(name[i], hex ? 16 : 10);
+                if (digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw malformed("invalid character reference");
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+            }
+            if (codePoint > Character.MAX_CODE_POINT) {
+                throw malformed("invalid character reference");
+            }
+            return codePoint;
+        }
+        if (nameIs("amp")) {
+            return '&';
+        } else if (nameIs("lt")) {
+            return '<';
+        } else if (nameIs("gt")) {
+            return '>';
+        } else if (nameIs("quot")) {
+            return '"';
+        } else if (nameIs("apos")) {
+            return '\'';
+        }
+        throw malformed("undeclared entity &" + new String(name, 0, nameLength, StandardCharsets.UTF_8) + ";");
+    }
+
+    // Input
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads a byte that must be there.
+     */
+    private int next() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw malformed("unexpected end of file");
+        }
+        return b;
+    }
+
+    /**
+     * Steps back over the byte just read; it is still in the buffer.
+     */
+    private void unread() {
+        position--;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (next() != expected) {
+            throw malformed("expected '" + expected + "'");
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private static IOException malformed(String message) {
+        return new IOException("XML parsing error: " + message);
+    }
+
+    /**
+     * UTF-8 text of the current cell, kept as bytes until it is used.
+     */
+    private static final class Text {
+        private byte[] bytes = new byte[64];
+        private int length;
+
+        void clear() {
+            length = 0;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        byte byteAt(int index) {
+            return bytes[index];
+        }
+
+        void append(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        void appendCodePoint(int codePoint) {
+            if (codePoint < 0x80) {
+                append(codePoint);
+            } else if (codePoint < 0x800) {
+                append(0xC0 | codePoint >> 6);
+                append(0x80 | codePoint & 0x3F);
+            } else if (codePoint < 0x10000) {
+                append(0xE0 | codePoint >> 12);
+                append(0x80 | codePoint >> 6 & 0x3F);
+                append(0x80 | codePoint & 0x3F);
+            } else {
+                append(0xF0 | codePoint >> 18);
+                append(0x80 | codePoint >> 12 & 0x3F);
+                append(0x80 | codePoint >> 6 & 0x3F);
+                append(0x80 | codePoint & 0x3F);
+            }
+        }
+
+        /**
+         * The text as a non-negative index, or -1 if it is not plain digits.
+         */
+        int toIndex() {
+            if (length > 9) {
+                return -1;
+            }
+            int result = 0;
+            for (int i = 0; i < length; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                result = result * 10 + digit;
+            }
+            return result;
+        }
+
+        /**
+         * The number rendered as a whole number, like the usermodel reader; integers are converted
+         * without going through a double.
+         */
+        String toNumber() {
+            int start = length > 0 && bytes[0] == '-' ? 1 : 0;
+            if (length > start && length - start <= 15) {
+                long result = 0;
+                int i = start;
+                for (; i < length; i++) {
+                    int digit = bytes[i] - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    result = result * 10 + digit;
+                }
+                if (i == length) {
+                    return String.valueOf(start == 1 ? -result : result);
+                }
+            }
+            return toNumber(toString());
+        }
+
+        static String toNumber(String text) {
+            try {
+                return String.valueOf((long) Double.parseDouble(text));
+            } catch (NumberFormatException e) {
+                return text;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
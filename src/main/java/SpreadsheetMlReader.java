@@ -0,0 +1,160 @@
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * StAX pull parser for Office 2003 SpreadsheetML (.xml) files.
+ * Walks Row/Cell/Data elements once, honours ss:Index on sparse cells and keeps
+ * only the text of the matched column, so the document is never held in memory.
+ */
+final class SpreadsheetMlReader {
+
+    private static final String SS_NAMESPACE = "urn:schemas-microsoft-com:office:spreadsheet";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private SpreadsheetMlReader() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads the target column and pushes the value of every data row into the sink.
+     * The first Row element is the header; rows without the column yield an empty string.
+     */
+    static void readColumn(Path file, ColumnMatcher column, RowSink values) throws IOException, XMLStreamException {
+        try (var is = Files.newInputStream(file)) {
+            readRows(is, column, -1, values);
+        }
+    }
+
+    /**
+     * Reads a chunk document of {@link ParallelSheetReader}: with columnIndex -1 it holds the header row
+     * and the index of the target column is returned; otherwise all of its rows are data rows.
+     */
+    static int readChunk(InputStream chunk, ColumnMatcher column, int columnIndex, RowSink values) throws IOException, XMLStreamException {
+        return readRows(chunk, column, columnIndex, values);
+    }
+
+    private static int readRows(InputStream is, ColumnMatcher column, int columnIndex, RowSink values)
+            throws XMLStreamException, ExcelToCsvExtractor.ExtractionException {
+        var reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+        try {
+            return readRows(reader, column, columnIndex, values);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the rows; with a known columnIndex the header has been read already and every row is a data row.
+     */
+    private static int readRows(XMLStreamReader reader, ColumnMatcher column, int columnIndex, RowSink values)
+            throws XMLStreamException, ExcelToCsvExtractor.ExtractionException {
+        var text = new StringBuilder();
+        int rowCount = columnIndex >= 0 ? 1 : 0;
+        int cellIndex = 0;
+        boolean inCell = false;
+        boolean dataSeen = false;
+        boolean capturing = false;
+        String rowValue = null;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    if (!isSpreadsheetElement(reader)) {
+                        break;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "Row" -> {
+                            cellIndex = 0;
+                            rowValue = null;
+                        }
+                        case "Cell" -> {
+                            var index = reader.getAttributeValue(SS_NAMESPACE, "Index");
+                            if (index != null && !index.isEmpty()) {
+                                cellIndex = Math.max(cellIndex, Integer.parseInt(index) - 1); // 1-based to 0-based
+                            }
+                            inCell = true;
+                            dataSeen = false;
+                        }
+                        case "Data" -> {
+                            // Only the first Data element of a cell is used; skip non-target cells of data rows
+                            if (inCell && !dataSeen && (rowCount == 0 || cellIndex == columnIndex)) {
+                                capturing = true;
+                                text.setLength(0);
+                            }
+                            dataSeen = true;
+                        }
+                        default -> {
+                        }
+                    }
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                    if (capturing) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    if (!isSpreadsheetElement(reader)) {
+                        break;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "Data" -> {
+                            if (capturing) {
+                                capturing = false;
+                                var value = text.toString().trim();
+                                if (rowCount > 0) {
+                                    rowValue = value;
+                                } else if (columnIndex < 0 && column.matches(value)) {
+                                    columnIndex = cellIndex;
+                                }
+                            }
+                        }
+                        case "Cell" -> {
+                            inCell = false;
+                            cellIndex++;
+                        }
+                        case "Row" -> {
+                            if (rowCount == 0 && columnIndex < 0) {
+                                throw new ExcelToCsvExtractor.ExtractionException("Column '" + column.columnName() + "' not found");
+                            }
+                            if (rowCount > 0) {
+                                values.accept(rowValue != null ? rowValue : "");
+                            }
+                            rowCount++;
+                        }
+                        default -> {
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        if (rowCount == 0) {
+            throw new ExcelToCsvExtractor.ExtractionException("No rows found in XML spreadsheet");
+        }
+        return columnIndex;
+    }
+
+    /**
+     * SpreadsheetML elements live in the ss namespace; plain documents without a namespace are accepted too.
+     */
+    private static boolean isSpreadsheetElement(XMLStreamReader reader) {
+        var namespace = reader.getNamespaceURI();
+        return namespace == null || namespace.isEmpty() || namespace.equals(SS_NAMESPACE);
+    }
+}
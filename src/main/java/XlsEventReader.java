@@ -0,0 +1,264 @@
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder.SheetRecordCollectingListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.ArrayRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExternSheetRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.record.SharedValueRecordBase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming .xls column reader built on POI's HSSFEventFactory record stream.
+ * Shared strings are resolved by index as cells arrive, only LabelSST, Number and
+ * Formula records (plus BoolErr, for boolean cells) of the first sheet are inspected,
+ * and parsing stops at the end of that sheet.
+ * Shared and array formulas are resolved from their SharedFormula and Array records,
+ * so filled-down formula columns render the same text as with the usermodel reader.
+ */
+final class XlsEventReader {
+
+    private static final short CONTINUE = 0;
+    private static final short ABORT = 1;
+
+    private XlsEventReader() {
+    }
+
+    /**
+     * Reads the target column of the first sheet and pushes every data row value into the sink.
+     * Rows without a cell in the target column yield an empty string, like the usermodel reader.
+     */
+    static void readColumn(Path file, ColumnMatcher column, RowSink values) throws IOException {
+        var listener = new ColumnListener(column, values);
+
+        var request = new HSSFRequest();
+        for (short sid : new short[]{
+            BOFRecord.sid, EOFRecord.sid, BoundSheetRecord.sid, ExternSheetRecord.sid, SSTRecord.sid,
+            RowRecord.sid, LabelSSTRecord.sid, NumberRecord.sid, FormulaRecord.sid, BoolErrRecord.sid,
+            SharedFormulaRecord.sid, ArrayRecord.sid
+        }) {
+            request.addListener(listener, sid);
+        }
+
+        // File-backed, read-only POIFS: sectors are read from disk on demand
+        try (var fs = new POIFSFileSystem(file.toFile(), true)) {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+        } catch (HSSFUserException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        if (listener.failure != null) {
+            throw new ExcelToCsvExtractor.ExtractionException(listener.failure);
+        }
+    }
+
+    /**
+     * Tracks the header row and the target column while records stream past.
+     * Rows are announced by RowRecords (in blocks) before their cells, so rows that
+     * exist but have no value in the target column are flushed as empty strings.
+     */
+    private static final class ColumnListener extends AbortableHSSFListener {
+
+        private final ColumnMatcher column;
+        private final RowSink values;
+        // Keeps BoundSheet/ExternSheet/SST records so formulas can be rendered as text
+        private final SheetRecordCollectingListener workbookRecords = new SheetRecordCollectingListener(null);
+        private final ArrayDeque<Integer> pendingRows = new ArrayDeque<>();
+        // SharedFormula and Array records of the sheet, by the first cell of their range
+        private final Map<Integer, SharedValueRecordBase> sharedFormulas = new HashMap<>();
+        // First cell of a shared formula range: its SharedFormula record only follows it
+        private FormulaRecord deferredFormula;
+
+        private HSSFWorkbook stubWorkbook;
+        private SSTRecord sst;
+        private boolean inFirstSheet;
+        private boolean headerSeen;
+        private boolean headerDone;
+        private int columnIndex = -1;
+        private String failure;
+
+        ColumnListener(ColumnMatcher column, RowSink values) {
+            this.column = column;
+            this.values = values;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            if (record instanceof SharedValueRecordBase shared) {
+                sharedFormulas.put(cellKey(shared.getFirstRow(), shared.getFirstColumn()), shared);
+            }
+            if (deferredFormula != null) {
+                var formula = deferredFormula;
+                deferredFormula = null;
+                if (processCell(formula) == ABORT) {
+                    return ABORT;
+                }
+            }
+            switch (record) {
+                case BOFRecord bof -> {
+                    if (bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                        inFirstSheet = true;
+                    }
+                }
+                case SSTRecord sstRecord -> {
+                    sst = sstRecord;
+                    workbookRecords.processRecordInternally(sstRecord);
+                }
+                case BoundSheetRecord _, ExternSheetRecord _ -> workbookRecords.processRecordInternally(record);
+                case EOFRecord _ -> {
+                    if (inFirstSheet) {
+                        finishSheet();
+                        return ABORT;
+                    }
+                }
+                case RowRecord row -> {
+                    if (inFirstSheet) {
+                        if (!headerSeen) {
+                            if (row.getRowNumber() != 0) {
+                                return fail("No header row found");
+                            }
+                            headerSeen = true;
+                        }
+                        pendingRows.add(row.getRowNumber());
+                    }
+                }
+                case FormulaRecord formula when inFirstSheet && awaitsSharedFormula(formula) -> deferredFormula = formula;
+                case CellValueRecordInterface cell when inFirstSheet -> {
+                    return processCell(cell);
+                }
+                default -> {
+                }
+            }
+            return CONTINUE;
+        }
+
+        private short processCell(CellValueRecordInterface cell) {
+            int row = cell.getRow();
+            if (row == 0) {
+                if (columnIndex < 0 && column.matches(cellValue(cell))) {
+                    columnIndex = cell.getColumn();
+                }
+                return CONTINUE;
+            }
+
+            if (!headerDone && !completeHeader()) {
+                return ABORT;
+            }
+
+            if (cell.getColumn() == columnIndex) {
+                flushRowsBefore(row);
+                if (!pendingRows.isEmpty() && pendingRows.peekFirst() == row) {
+                    pendingRows.removeFirst();
+                }
+                values.accept(cellValue(cell));
+            }
+            return CONTINUE;
+        }
+
+        private boolean completeHeader() {
+            headerDone = true;
+            if (!headerSeen) {
+                failure = "No header row found";
+                return false;
+            }
+            if (columnIndex < 0) {
+                failure = "Column '" + column.columnName() + "' not found";
+                return false;
+            }
+            pendingRows.pollFirst(); // Header row
+            return true;
+        }
+
+        private void finishSheet() {
+            if (!headerDone && !completeHeader()) {
+                return;
+            }
+            flushRowsBefore(Integer.MAX_VALUE);
+        }
+
+        private void flushRowsBefore(int row) {
+            while (!pendingRows.isEmpty() && pendingRows.peekFirst() < row) {
+                pendingRows.removeFirst();
+                values.accept("");
+            }
+        }
+
+        /**
+         * Renders a cell record the same way as getCellValue does for usermodel cells.
+         */
+        private String cellValue(CellValueRecordInterface cell) {
+            return switch (cell) {
+                case LabelSSTRecord label -> sst != null ? sst.getString(label.getSSTIndex()).getString() : "";
+                case NumberRecord number -> String.valueOf((long) number.getValue());
+                case FormulaRecord formula -> HSSFFormulaParser.toFormulaString(stubWorkbook(), formulaTokens(formula));
+                case BoolErrRecord boolErr when boolErr.isBoolean() -> String.valueOf(boolErr.getBooleanValue());
+                default -> "";
+            };
+        }
+
+        /**
+         * Returns the formula's own tokens, or for a cell of a shared or array formula (a lone ExpPtg
+         * pointing at the range's first cell) the tokens of that formula, shifted to the cell like usermodel does.
+         */
+        private Ptg[] formulaTokens(FormulaRecord formula) {
+            var tokens = formula.getParsedExpression();
+            if (tokens.length == 1 && tokens[0] instanceof ExpPtg exp) {
+                switch (sharedFormulas.get(cellKey(exp.getRow(), exp.getColumn()))) {
+                    case SharedFormulaRecord shared -> {
+                        return shared.getFormulaTokens(formula);
+                    }
+                    case ArrayRecord array -> {
+                        return array.getFormulaTokens();
+                    }
+                    case null, default -> {
+                    }
+                }
+            }
+            return tokens;
+        }
+
+        private boolean awaitsSharedFormula(FormulaRecord formula) {
+            var tokens = formula.getParsedExpression();
+            return tokens.length == 1 && tokens[0] instanceof ExpPtg exp
+                && !sharedFormulas.containsKey(cellKey(exp.getRow(), exp.getColumn()));
+        }
+
+        private static int cellKey(int row, int column) {
+            return row << 8 | column;
+        }
+
+        private HSSFWorkbook stubWorkbook() {
+            if (stubWorkbook == null) {
+                stubWorkbook = workbookRecords.getStubHSSFWorkbook();
+            }
+            return stubWorkbook;
+        }
+
+        private short fail(String message) {
+            failure = message;
+            return ABORT;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Streaming .xlsx column reader built on POI's XSSFReader/XSSFSheetXMLHandler event model.
+ * Only the first sheet is parsed and only values of the target column are emitted,
+ * so memory use does not grow with the number of rows or columns in the workbook.
+ * With the SCANNER engine the sheet is read by {@link SheetXmlScanner} instead of SAX,
+ * falling back to SAX for sheets the scanner does not handle.
+ * With pipelinedInflate, the sheets of large workbooks are inflated by a {@link PipelinedInputStream}.
+ * With parallelRows, the sheets of large workbooks are inflated to a temp file and scanned by
+ * {@link ParallelSheetReader} in row ranges.
+ */
+final class XlsxStreamingReader {
+
+    // Smaller workbooks inflate too quickly to be worth a thread
+    private static final long PIPELINE_MIN_BYTES = 4L * 1024 * 1024;
+    private static final int PIPELINE_BUFFERS = 8;
+    private static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
+    private static final long PARALLEL_MIN_BYTES = 4L * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private XlsxStreamingReader() {
+    }
+
+    /**
+     * Reads the target column of the first sheet and pushes every data row value into the sink.
+     * Rows without a cell in the target column yield an empty string, like the usermodel reader.
+     * Throws ExtractionException as soon as the header row is known to lack the column.
+     * The sheet is parsed with the context's SAX reader, which is reused across files.
+     */
+    static void readColumn(Path file, ColumnMatcher column, ExtractionContext context, RowSink values) throws IOException {
+        // Opened from the file: entries are read from the zip on demand, not buffered in memory
+        try (var pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+
+            var reader = new XSSFReader(pkg);
+            if (!reader.getSheetsData().hasNext()) {
+                throw new ExcelToCsvExtractor.ExtractionException("No header row found");
+            }
+            boolean pipelined = context.options().pipelinedInflate() && Files.size(file) >= PIPELINE_MIN_BYTES;
+            boolean parallel = context.options().parallelRows() && Files.size(file) >= PARALLEL_MIN_BYTES;
+
+            SharedStrings strings = switch (context.options().sharedStrings()) {
+                case IN_MEMORY -> new ReadOnlySharedStringsTable(pkg, false);
+                case SELECTIVE -> selectiveStrings(pkg, reader, pipelined, column, context);
+                case MAPPED -> MappedSharedStrings.load(pkg, context.xmlReader());
+            };
+
+            try {
+                if (parallel) {
+                    readSheetInParallel(file, reader, pipelined, strings, column, context, values);
+                } else {
+                    readSheet(file, reader, pipelined, strings, column, context, values);
+                }
+            } finally {
+                if (strings instanceof MappedSharedStrings mapped) {
+                    mapped.close();
+                }
+            }
+
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static void readSheet(Path file, XSSFReader reader, boolean pipelined, SharedStrings strings, ColumnMatcher column, ExtractionContext context, RowSink values)
+            throws IOException, SAXException, ParserConfigurationException, OpenXML4JException {
+        if (context.options().engine() == ExcelToCsvExtractor.ReaderEngine.SCANNER
+                && scanSheet(file, reader, pipelined, strings, column, context, values)) {
+            return;
+        }
+        try (var sheet = openSheet(reader, pipelined)) {
+            parseSheet(context, sheet, strings, new ColumnCollector(column, values));
+        }
+    }
+
+    /**
+     * Inflates the sheet to a temp file and scans it in parallel row ranges with {@link SheetXmlScanner},
+     * whatever the engine; sheets that cannot be split are read by {@link #readSheet}.
+     */
+    private static void readSheetInParallel(Path file, XSSFReader reader, boolean pipelined, SharedStrings strings, ColumnMatcher column, ExtractionContext context, RowSink values)
+            throws IOException, OpenXML4JException {
+        var sheetXml = Files.createTempFile("excel-to-csv-sheet-", ".xml");
+        try {
+            try (var sheet = openSheet(reader, pipelined)) {
+                Files.copy(sheet, sheetXml, StandardCopyOption.REPLACE_EXISTING);
+            }
+            ParallelSheetReader.readColumn(sheetXml, "row",
+                (chunk, columnIndex, rows) -> SheetXmlScanner.scanChunk(chunk, new byte[SCAN_BUFFER_SIZE], strings, column, columnIndex, rows),
+                rows -> {
+                    try {
+                        readSheet(file, reader, pipelined, strings, column, context, rows);
+                    } catch (SAXException | ParserConfigurationException | OpenXML4JException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                },
+                values);
+        } finally {
+            Files.deleteIfExists(sheetXml);
+        }
+    }
+
+    /**
+     * Loads only the shared strings the extraction uses, scanning the first sheet before it is parsed:
+     * <ol>
+     *   <li>collect the indexes used in the header row and load them;</li>
+     *   <li>locate the target column by parsing just the header row with them;</li>
+     *   <li>collect the indexes used in the target column and load those as well.</li>
+     * </ol>
+     * If the header row lacks the column, only the header strings are loaded and the parse reports it.
+     */
+    private static SharedStrings selectiveStrings(OPCPackage pkg, XSSFReader reader, boolean pipelined, ColumnMatcher column, ExtractionContext context)
+            throws IOException, SAXException, ParserConfigurationException, OpenXML4JException {
+        var xmlReader = context.xmlReader();
+        var indexes = new IntHashSet();
+        try (var sheet = openSheet(reader, pipelined)) {
+            SelectiveSharedStrings.scanSheet(sheet, -1, true, indexes, xmlReader);
+        }
+        var headerStrings = SelectiveSharedStrings.load(pkg, indexes, xmlReader);
+
+        var header = new ColumnCollector(column, _ -> {
+        });
+        header.headerOnly = true;
+        try (var sheet = openSheet(reader, pipelined)) {
+            parseSheet(context, sheet, headerStrings, header);
+        } catch (ExcelToCsvExtractor.ExtractionException e) {
+            return headerStrings;
+        } catch (HeaderRead e) {
+            // Column found
+        }
+
+        try (var sheet = openSheet(reader, pipelined)) {
+            SelectiveSharedStrings.scanSheet(sheet, header.columnIndex, false, indexes, xmlReader);
+        }
+        return SelectiveSharedStrings.load(pkg, indexes, xmlReader);
+    }
+
+    /**
+     * Reads the column with the byte-level {@link SheetXmlScanner}; returns false if the sheet has to be parsed with SAX.
+     */
+    private static boolean scanSheet(Path file, XSSFReader reader, boolean pipelined, SharedStrings strings, ColumnMatcher column, ExtractionContext context, RowSink values)
+            throws IOException, OpenXML4JException {
+        try (var sheet = openSheet(reader, pipelined)) {
+            SheetXmlScanner.scan(sheet, context.sheetBuffer(), strings, column, values);
+            return true;
+        } catch (SheetXmlScanner.Unsupported e) {
+            Log.debug(file.getFileName() + ": " + e.getMessage() + ", parsing with SAX");
+            return false;
+        }
+    }
+
+    /**
+     * Opens the first sheet, inflated on a separate thread when pipelined.
+     */
+    private static InputStream openSheet(XSSFReader reader, boolean pipelined) throws IOException, OpenXML4JException {
+        var sheet = reader.getSheetsData().next();
+        return pipelined ? new PipelinedInputStream(sheet, PIPELINE_BUFFERS, PIPELINE_BUFFER_SIZE) : sheet;
+    }
+
+    private static void parseSheet(ExtractionContext context, InputStream sheet, SharedStrings strings, ColumnCollector collector)
+            throws IOException, SAXException, ParserConfigurationException {
+        var xmlReader = context.xmlReader();
+        // No styles table: numbers arrive unformatted and are rendered like the usermodel reader
+        xmlReader.setContentHandler(new TypedSheetHandler(strings, collector));
+        try {
+            xmlReader.parse(new InputSource(sheet));
+        } catch (UncheckedIOException e) {
+            // Raised by the collector to stop parsing early (e.g. column not in header)
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sheet handler that remembers the raw cell type ("t" attribute) and the formula of the current cell,
+     * so the collector can render booleans, numbers and formulas the same way as getCellValue.
+     * XSSFSheetXMLHandler only supplies cached values; formula text, with shared formulas expanded,
+     * is collected here. Formula cells without a cached value are reported with their formula text.
+     */
+    private static final class TypedSheetHandler extends XSSFSheetXMLHandler {
+
+        private final ColumnCollector collector;
+        private final StringBuilder formula = new StringBuilder();
+        private String cellReference;
+        private boolean formulaOpen;
+        // Attributes of the current <f>
+        private String formulaType;
+        private String formulaRange;
+        private String formulaIndex;
+
+        TypedSheetHandler(SharedStrings strings, ColumnCollector collector) {
+            super(null, strings, collector, false);
+            this.collector = collector;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("c".equals(localName)) {
+                cellReference = attributes.getValue("r");
+                collector.cellType = attributes.getValue("t");
+                collector.cellReported = false;
+                collector.formula = null;
+                collector.sharedIndex = -1;
+            } else if ("f".equals(localName)) {
+                formulaOpen = true;
+                formula.setLength(0);
+                formulaType = attributes.getValue("t");
+                formulaRange = attributes.getValue("ref");
+                formulaIndex = attributes.getValue("si");
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (formulaOpen) {
+                formula.append(ch, start, length);
+            }
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if ("f".equals(localName)) {
+                formulaOpen = false;
+                endFormula();
+            } else if ("c".equals(localName) && !collector.cellReported && collector.hasFormula()) {
+                collector.cell(cellReference, null, null);
+            }
+            super.endElement(uri, localName, qName);
+        }
+
+        private void endFormula() {
+            var text = formula.toString();
+            switch (formulaType != null ? formulaType : "normal") {
+                case "shared" -> {
+                    int index = parseIndex(formulaIndex);
+                    if (index >= 0) {
+                        if (formulaRange != null) {
+                            collector.sharedFormulas.defineShared(index, formulaRange, text);
+                        }
+                        collector.sharedIndex = index;
+                    }
+                }
+                case "array" -> {
+                    if (formulaRange != null) {
+                        collector.sharedFormulas.defineArray(formulaRange, text);
+                    }
+                    collector.formula = text;
+                }
+                case "dataTable" -> {
+                    // Not a formula cell for the usermodel reader, which uses the cached value
+                }
+                default -> collector.formula = text;
+            }
+        }
+
+        private static int parseIndex(String index) {
+            try {
+                return index != null ? Integer.parseInt(index) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Ends the header-only parse of the selective shared strings scan.
+     */
+    private static final class HeaderRead extends RuntimeException {
+        HeaderRead() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Locates the target column in the header row and emits its value for every data row.
+     */
+    private static final class ColumnCollector implements SheetContentsHandler {
+
+        private final ColumnMatcher column;
+        private final RowSink values;
+        // Stop with HeaderRead once the column is located
+        private boolean headerOnly;
+
+        private String cellType;
+        private boolean cellReported;
+        // Formula of the current cell: its own text, or the index of the shared formula it uses
+        private String formula;
+        private int sharedIndex = -1;
+        private final SharedFormulas sharedFormulas = new SharedFormulas();
+        private boolean headerSeen;
+        private int columnIndex = -1;
+        private int currentRow = -1;
+        private String currentValue;
+
+        ColumnCollector(ColumnMatcher column, RowSink values) {
+            this.column = column;
+            this.values = values;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (!headerSeen) {
+                if (rowNum != 0) {
+                    throw stop("No header row found");
+                }
+                headerSeen = true;
+            }
+            currentRow = rowNum;
+            currentValue = null;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowNum == 0) {
+                if (columnIndex < 0) {
+                    throw stop("Column '" + column.columnName() + "' not found");
+                }
+                if (headerOnly) {
+                    throw new HeaderRead();
+                }
+                return;
+            }
+            values.accept(currentValue != null ? currentValue : "");
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            cellReported = true;
+            if (cellReference == null) {
+                return;
+            }
+
+            int cellColumn = new CellReference(cellReference).getCol();
+            if (currentRow == 0) {
+                if (columnIndex < 0 && column.matches(cellValue(cellColumn, formattedValue))) {
+                    columnIndex = cellColumn;
+                }
+            } else if (cellColumn == columnIndex) {
+                currentValue = cellValue(cellColumn, formattedValue);
+            }
+        }
+
+        boolean hasFormula() {
+            return formula != null || sharedIndex >= 0;
+        }
+
+        /**
+         * Formula cells, including the cells of an array formula's range, yield their formula text like getCellValue;
+         * only other cells have their cached value converted.
+         */
+        private String cellValue(int cellColumn, String formattedValue) {
+            if (sharedIndex >= 0) {
+                var text = sharedFormulas.sharedFormula(sharedIndex, currentRow, cellColumn);
+                if (text == null) {
+                    throw stop("Shared formula " + sharedIndex + " is used before it is defined");
+                }
+                return text;
+            }
+            if (formula != null) {
+                return formula;
+            }
+            var array = sharedFormulas.arrayFormula(currentRow, cellColumn);
+            return array != null ? array : toCellValue(formattedValue);
+        }
+
+        @Override
+        public void endSheet() {
+            if (!headerSeen) {
+                throw stop("No header row found");
+            }
+        }
+
+        /**
+         * Converts a cached value from the handler to the same text the usermodel reader produces.
+         */
+        private String toCellValue(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (cellType == null || cellType.equals("n")) {
+                try {
+                    return String.valueOf((long) Double.parseDouble(value));
+                } catch (NumberFormatException e) {
+                    return value;
+                }
+            }
+            return switch (cellType) {
+                case "b" -> value.toLowerCase();
+                case "e" -> "";
+                default -> value;
+            };
+        }
+
+        private static UncheckedIOException stop(String message) {
+            return new UncheckedIOException(new ExcelToCsvExtractor.ExtractionException(message));
+        }
+    }
+}
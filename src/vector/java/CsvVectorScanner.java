@@ -0,0 +1,34 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API scan for characters that require CSV quoting.
+ * Compares a full vector of chars against all needles at once and stops at the first lane that matches.
+ * Only compiled with the vector profile (mvn -Pvector), which keeps the incubator module out of the default build,
+ * and only loaded when the jdk.incubator.vector module is enabled; see {@link CsvEscaper}.
+ */
+final class CsvVectorScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    private CsvVectorScanner() {
+    }
+
+    static int indexOfSpecial(char[] chars, int from, int to, char separator) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            var lanes = ShortVector.fromCharArray(SPECIES, chars, i);
+            VectorMask<Short> hits = lanes.eq((short) separator)
+                .or(lanes.eq((short) '"'))
+                .or(lanes.eq((short) '\n'))
+                .or(lanes.eq((short) '\r'));
+            if (hits.anyTrue()) {
+                return i + hits.firstTrue();
+            }
+        }
+        // Tail shorter than one vector
+        return CsvEscaper.indexOfSpecialScalar(chars, i, to, separator);
+    }
+}
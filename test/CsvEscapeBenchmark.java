@@ -0,0 +1,175 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * CSV Escape Benchmark - Java 25.0.1
+ * Compares the previous escapeCsvValue (four contains scans, replace and concatenation)
+ * with the single-pass CsvEscaper, on its own and on the CsvRowWriter path (escape, then encode
+ * the field and row end into a reusable ByteBuffer). Also checks that both produce the same fields.
+ *
+ * Run with --add-modules jdk.incubator.vector to include the vector scan.
+ */
+public class CsvEscapeBenchmark {
+
+    public record Result(String name, double nanosPerValue, long checksum) {}
+
+    private static final int VALUES = 100_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args) {
+        var delimiter = ExcelToCsvExtractor.CsvDelimiter.SEMICOLON;
+        var values = generateValues(args.length > 0 ? Long.parseLong(args[0]) : 42);
+
+        verify(values, delimiter);
+
+        var results = new ArrayList<Result>();
+        results.add(run("previous escapeCsvValue", values, () -> {
+            long checksum = 0;
+            for (var value : values) {
+                checksum += previousEscape(value, delimiter).length();
+            }
+            return checksum;
+        }));
+        results.add(run("CsvEscaper", values, () -> {
+            var escaper = new CsvEscaper(delimiter);
+            long checksum = 0;
+            for (var value : values) {
+                checksum += escaper.escape(value).remaining();
+            }
+            return checksum;
+        }));
+        var escaperResult = results.getLast();
+
+        var encoder = StandardCharsets.UTF_8.newEncoder();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        var rowEnd = delimiter.getSeparator() + System.lineSeparator();
+        results.add(run("write path, previous", values, () -> {
+            long checksum = 0;
+            for (var value : values) {
+                checksum += encode(encoder, CharBuffer.wrap(previousEscape(value, delimiter)), buffer);
+                checksum += encode(encoder, CharBuffer.wrap(delimiter.getSeparator()), buffer);
+                checksum += encode(encoder, CharBuffer.wrap(System.lineSeparator()), buffer);
+            }
+            return checksum;
+        }));
+        var previousWrite = results.getLast();
+        results.add(run("write path, CsvEscaper", values, () -> {
+            var escaper = new CsvEscaper(delimiter);
+            var end = CharBuffer.wrap(rowEnd);
+            long checksum = 0;
+            for (var value : values) {
+                checksum += encode(encoder, escaper.escape(value), buffer);
+                checksum += encode(encoder, end.rewind(), buffer);
+            }
+            return checksum;
+        }));
+        var escaperWrite = results.getLast();
+
+        System.out.println("""
+            Values: %d (mixed plain, quoted and long values)
+            Vector API: %s
+            """.formatted(VALUES, CsvEscaper.VECTORIZED
+                ? "enabled"
+                : "not enabled (build with -Pvector and add --add-modules jdk.incubator.vector)"));
+
+        if (CsvEscaper.VECTORIZED) {
+            var chars = values.stream().map(String::toCharArray).toList();
+            results.add(run("scan only, scalar", values, () -> scanAll(chars, false)));
+            results.add(run("scan only, vector", values, () -> scanAll(chars, true)));
+        }
+
+        for (var result : results) {
+            System.out.printf("  %-26s %8.1f ns/value   (checksum %d)%n", result.name(), result.nanosPerValue(), result.checksum());
+        }
+        System.out.printf("%nSpeed-up of CsvEscaper over previous: %.2fx escape only, %.2fx write path%n",
+            results.getFirst().nanosPerValue() / escaperResult.nanosPerValue(),
+            previousWrite.nanosPerValue() / escaperWrite.nanosPerValue());
+    }
+
+    /**
+     * The escaper before the single-pass rewrite, kept here as the baseline.
+     */
+    private static String previousEscape(String value, ExcelToCsvExtractor.CsvDelimiter delimiter) {
+        boolean needsQuoting = value.contains(delimiter.getSeparator())
+            || value.contains("\"")
+            || value.contains("\n")
+            || value.contains("\r");
+
+        if (needsQuoting) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static void verify(List<String> values, ExcelToCsvExtractor.CsvDelimiter delimiter) {
+        var escaper = new CsvEscaper(delimiter);
+        for (var value : values) {
+            var expected = previousEscape(value, delimiter);
+            var actual = escaper.escape(value).toString();
+            if (!expected.equals(actual) || !expected.equals(ExcelToCsvExtractor.escapeCsvValue(value, delimiter))) {
+                throw new IllegalStateException("Escaping differs for: " + value);
+            }
+        }
+        System.out.println("Verified " + values.size() + " values against the previous implementation");
+    }
+
+    /**
+     * Encodes into the buffer like CsvRowWriter, discarding the bytes when it fills up.
+     */
+    private static int encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer buffer) {
+        int length = chars.remaining();
+        while (encoder.encode(chars, buffer, false).isOverflow()) {
+            buffer.clear();
+        }
+        return length;
+    }
+
+    private static long scanAll(List<char[]> values, boolean vector) {
+        long checksum = 0;
+        for (var chars : values) {
+            checksum += vector
+                ? CsvVectorScanner.indexOfSpecial(chars, 0, chars.length, ';')
+                : CsvEscaper.indexOfSpecialScalar(chars, 0, chars.length, ';');
+        }
+        return checksum;
+    }
+
+    private interface Round {
+        long run();
+    }
+
+    private static Result run(String name, List<String> values, Round round) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            checksum += round.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            checksum += round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return new Result(name, (double) best / values.size(), checksum);
+    }
+
+    private static List<String> generateValues(long seed) {
+        var random = new Random(seed);
+        var values = new ArrayList<String>(VALUES);
+        for (int i = 0; i < VALUES; i++) {
+            var value = switch (random.nextInt(10)) {
+                case 0 -> "Street " + i + "; Building " + random.nextInt(100);
+                case 1 -> "Said \"hello\" to user" + i;
+                case 2 -> "Line one\nline two " + i;
+                case 3 -> "a long free text comment without any special characters, number " + i
+                    + " and some more words to make it longer than a few vectors";
+                default -> "user" + i + "@example" + random.nextInt(50) + ".com";
+            };
+            values.add(value);
+        }
+        return values;
+    }
+}
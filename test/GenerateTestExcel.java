@@ -1,4 +1,16 @@
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.formula.Formula;
+import org.apache.poi.ss.formula.ptg.*;
+import org.apache.poi.util.LittleEndianByteArrayInputStream;
+import org.apache.poi.util.LittleEndianOutputStream;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellFormulaType;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 import org.apache.poi.ss.usermodel.*;
 
 import java.io.*;
@@ -28,6 +40,8 @@ public class GenerateTestExcel {
         for (var testFile : testFiles) {
             createExcel(testDir.resolve(testFile.filename()), testFile.columnName(), testFile.values());
         }
+        createSharedFormulaXls(testDir.resolve("test_shared_formula.xls"), 5);
+        createFormulaXlsx(testDir.resolve("test_formulas.xlsx"));
 
         System.out.println("""
             Test Excel files created in: %s
@@ -36,6 +50,8 @@ public class GenerateTestExcel {
               - test_emails.xlsx     (Email column - capitalized)
               - test_emails_upper.xlsx (EMAIL column - uppercase)
               - test_no_email.xlsx   (Name column - no email, tests error logging)
+              - test_shared_formula.xls (Total column - filled-down shared formula, =A2*2 to =A6*2)
+              - test_formulas.xlsx   (Total column - shared, boolean, error and array formulas, as formula text)
             """.formatted(testDir));
     }
 
@@ -56,4 +72,142 @@ public class GenerateTestExcel {
             }
         }
     }
+
+    /**
+     * Writes an .xls whose Total column is one formula filled down, stored the way Excel saves it:
+     * a SharedFormula record after the first cell, and every cell's formula pointing at it.
+     * POI only writes plain formulas, so the records of a plain workbook are rewritten.
+     */
+    private static void createSharedFormulaXls(Path path, int rows) throws IOException {
+        var plain = new ByteArrayOutputStream();
+        try (var workbook = new HSSFWorkbook()) {
+            var sheet = workbook.createSheet("Data");
+
+            var header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Amount");
+            header.createCell(1).setCellValue("Total");
+
+            for (var i = 1; i <= rows; i++) {
+                var row = sheet.createRow(i);
+                row.createCell(0).setCellValue(i * 10);
+                row.createCell(1).setCellFormula("A" + (i + 1) + "*2");
+            }
+            workbook.write(plain);
+        }
+
+        var records = new ByteArrayOutputStream();
+        try (var fs = new POIFSFileSystem(new ByteArrayInputStream(plain.toByteArray()))) {
+            for (var record : RecordFactory.createRecords(fs.createDocumentInputStream("Workbook"))) {
+                if (record instanceof FormulaRecord formula) {
+                    formula.setSharedFormula(true);
+                    formula.setParsedExpression(new Ptg[]{new ExpPtg(1, 1)});
+                    records.write(formula.serialize());
+                    if (formula.getRow() == 1) {
+                        writeSharedFormula(records, rows);
+                    }
+                } else {
+                    records.write(record.serialize());
+                }
+            }
+        }
+
+        // POI reads records in sequence, so loading and saving again fixes the stream offsets
+        try (var fs = new POIFSFileSystem()) {
+            fs.createDocument(new ByteArrayInputStream(records.toByteArray()), "Workbook");
+            try (var workbook = new HSSFWorkbook(fs); var out = Files.newOutputStream(path)) {
+                workbook.write(out);
+            }
+        }
+    }
+
+    /**
+     * SharedFormula record for B2:B(rows + 1) holding A*2 of the same row (column offset -1).
+     */
+    private static void writeSharedFormula(OutputStream records, int rows) {
+        // Relative row offset 0 and column offset -1 (0xFF), both flagged relative
+        var sameRowColumnA = new RefNPtg(new LittleEndianByteArrayInputStream(new byte[]{0, 0, (byte) 0xFF, (byte) 0xC0}));
+        var formula = Formula.create(new Ptg[]{sameRowColumnA, new IntPtg(2), MultiplyPtg.instance});
+
+        var out = new LittleEndianOutputStream(records);
+        out.writeShort(SharedFormulaRecord.sid);
+        out.writeShort(8 + formula.getEncodedSize());
+        out.writeShort(1);
+        out.writeShort(rows);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.writeShort(0); // Reserved
+        formula.serialize(out);
+    }
+
+    /**
+     * Writes an .xlsx whose Total column holds the formula kinds Excel saves specially: two shared formulas
+     * (the second spanning two columns, with its first cell outside Total), boolean formulas with and without
+     * a cached value, an error formula and an array formula. Every Total cell is extracted as its formula text.
+     */
+    private static void createFormulaXlsx(Path path) throws IOException {
+        try (var workbook = new XSSFWorkbook()) {
+            var sheet = workbook.createSheet("Data");
+
+            var header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Amount");
+            header.createCell(1).setCellValue("Total");
+            for (var i = 1; i <= 12; i++) {
+                sheet.createRow(i).createCell(0).setCellValue(i * 10);
+            }
+
+            // B2:B6 =A2*2 filled down
+            for (var i = 1; i <= 5; i++) {
+                var cell = sheet.getRow(i).createCell(1);
+                setFormula(cell, i == 1 ? "A2*2" : "", STCellFormulaType.SHARED, i == 1 ? "B2:B6" : null, 0);
+                cell.getCTCell().setV(String.valueOf((i + 1) * 20));
+            }
+            // A7:B8 =SUM($A$2:A6) filled right and down, so the first cell of the range is outside Total
+            for (var i = 6; i <= 7; i++) {
+                for (var column = 0; column <= 1; column++) {
+                    var cell = column == 0 ? sheet.getRow(i).getCell(0) : sheet.getRow(i).createCell(1);
+                    boolean first = i == 6 && column == 0;
+                    setFormula(cell, first ? "SUM($A$2:A6)" : "", STCellFormulaType.SHARED, first ? "A7:B8" : null, 1);
+                }
+            }
+            // Boolean formulas, with a cached value and without one
+            var cached = sheet.getRow(8).createCell(1);
+            setFormula(cached, "AND(A9>0,TRUE)", null, null, -1);
+            cached.getCTCell().setT(STCellType.B);
+            cached.getCTCell().setV("1");
+            var uncached = sheet.getRow(9).createCell(1);
+            setFormula(uncached, "OR(A10<0,FALSE)", null, null, -1);
+            uncached.getCTCell().setT(STCellType.B);
+            // Error formula
+            var error = sheet.getRow(10).createCell(1);
+            setFormula(error, "A11/0", null, null, -1);
+            error.getCTCell().setT(STCellType.E);
+            error.getCTCell().setV("#DIV/0!");
+            // Array formula over B12:B13; only its first cell holds the formula
+            var array = sheet.getRow(11).createCell(1);
+            setFormula(array, "A12:A13*3", STCellFormulaType.ARRAY, "B12:B13", -1);
+            array.getCTCell().setV("330");
+            sheet.getRow(12).createCell(1).getCTCell().setV("360");
+
+            try (var out = Files.newOutputStream(path)) {
+                workbook.write(out);
+            }
+        }
+    }
+
+    /**
+     * Sets a cell's &lt;f&gt; directly, since POI's setCellFormula only writes plain formulas.
+     */
+    private static void setFormula(XSSFCell cell, String text, STCellFormulaType.Enum type, String range, int index) {
+        var f = cell.getCTCell().addNewF();
+        f.setStringValue(text);
+        if (type != null) {
+            f.setT(type);
+        }
+        if (range != null) {
+            f.setRef(range);
+        }
+        if (index >= 0) {
+            f.setSi(index);
+        }
+    }
 }